@@ -0,0 +1,322 @@
+import java.util.Random;
+
+/**
+ * Local search over insertion sequences, by simulated annealing.
+ *
+ * A solution is an order of the rectangles, a rotation flag for each rectangle and, if the height is free,
+ * the width of the strip. It is decoded by the skyline packer, which places the rectangles in that order.
+ * A chain repeatedly changes its solution with one of the following moves, and keeps the change if it does not make
+ * the enclosing rectangle larger, or otherwise with a probability that shrinks as the temperature goes down:
+ * <ul>
+ *     <li>swap: two rectangles trade places in the order</li>
+ *     <li>move: a rectangle is taken out of the order and inserted somewhere else</li>
+ *     <li>rotate: a rectangle is flipped (if rotations are allowed and it still fits in a fixed height)</li>
+ *     <li>resize: the strip gets a little wider or narrower (if the height is free)</li>
+ * </ul>
+ * Several independent chains run on their own threads. They share the best solution found so far, and every few
+ * iterations a chain that is worse than it continues from it. The temperature is lowered with the time that is
+ * spent, so the chains cool down exactly when the time limit is reached.
+ *
+ * The best fit skyline packing is kept if none of the chains beats it.
+ */
+public class AnnealingPacking implements PlacementSolver {
+    private final static long DEFAULT_TIME_LIMIT = 1000;    // the default time limit, in milliseconds
+    private final static int EXCHANGE_INTERVAL = 1 << 6;    // the number of iterations between exchanges of the best
+    private final static double START_TEMPERATURE = 0.05;   // the start temperature, relative to the area
+    private final static double END_TEMPERATURE = 0.0005;   // the end temperature, relative to the area
+
+    // the moves
+    private final static int ROTATE = 0;
+    private final static int RESIZE = 1;
+    private final static int SWAP = 2;
+    private final static int SHIFT = 3;
+
+    private boolean rotations;          // if rotations are allowed
+    private int fixedHeight;            // the fixed height; 0 if the height is free
+    private long timeLimit;             // the time limit, in milliseconds
+    private int threads;                // the number of chains, each on its own thread
+    private Rectangle enclosingRectangle;
+
+    private RectangleSet rectangles;    // the rectangles, as they are given
+    private long start;                 // the time at which the search started (System.nanoTime)
+    private long end;                   // the time at which the search stops (System.nanoTime)
+
+    // the best solution of all the chains; only accessed while holding the lock of this solver
+    private int[] bestOrder;            // the order of the rectangles
+    private boolean[] bestTurned;       // whether each rectangle is rotated
+    private int bestWidth;              // the width of the strip
+    private long bestArea;              // the area of the enclosing rectangle
+
+    public AnnealingPacking(boolean rotations, int fixedHeight) {
+        this(rotations, fixedHeight, DEFAULT_TIME_LIMIT, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor with the choice of the time limit and of the number of chains.
+     *
+     * @param timeLimit the time limit, in milliseconds
+     * @param threads the number of chains, each on its own thread
+     */
+    public AnnealingPacking(boolean rotations, int fixedHeight, long timeLimit, int threads) {
+        this.rotations = rotations;
+        this.fixedHeight = fixedHeight;
+        this.timeLimit = timeLimit;
+        this.threads = Math.max(1, threads);
+    }
+
+    @Override
+    public Placement solver(RectangleSet rectangles) {
+        this.rectangles = rectangles;
+        start = System.nanoTime();
+        end = start + timeLimit * 1000000L;
+        int n = rectangles.size();
+
+        // the best fit skyline packing is the one to beat
+        Placement baseline = new SkylinePacking(rotations, fixedHeight).solver(rectangles);
+        enclosingRectangle = baseline.getEnclosingRectangle();
+        if (n < 2) {
+            return baseline;
+        }
+
+        // the chains start from the rectangles lying flat, in the order of decreasing height
+        bestTurned = new boolean[n];
+        int[] along = new int[n];
+        long totalArea = 0;
+        for (int i = 0; i < n; i++) {
+            int width = rectangles.getWidth(i);
+            int height = rectangles.getHeight(i);
+            totalArea += (long) width * height;
+            // a rectangle that is too tall for a fixed height has to lie flat
+            bestTurned[i] = rotations && ((fixedHeight > 0) ?
+                    (width > height || height > fixedHeight) && width <= fixedHeight : height > width);
+            along[i] = ((fixedHeight > 0) != bestTurned[i]) ? width : height;
+        }
+        bestOrder = RectangleSet.sortDescending(along);
+        bestWidth = (int) Math.ceil(Math.sqrt((double) totalArea));  // widened to the widest rectangle by the decoder
+        bestArea = Long.MAX_VALUE;
+
+        Chain[] chains = new Chain[threads];
+        Thread[] workers = new Thread[threads];
+        for (int k = 0; k < threads; k++) {
+            chains[k] = new Chain(k);
+            workers[k] = new Thread(chains[k]);
+            workers[k].start();
+        }
+        try {
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+
+        long baselineArea = (long) enclosingRectangle.width * enclosingRectangle.height;
+        if (bestArea >= baselineArea) {
+            return baseline;
+        }
+
+        // decode the best solution again, with the rotations marked on the placement of the given rectangles
+        Placement placement = new SkylinePacking(false, fixedHeight).solver(turn(bestTurned), bestOrder, bestWidth);
+        for (int i = 0; i < n; i++) {
+            if (bestTurned[i]) {
+                placement.rotate(i);
+            }
+        }
+        enclosingRectangle = placement.getEnclosingRectangle();
+
+        return placement;
+    }
+
+    /**
+     * Create a copy of the rectangles in which the flagged ones are rotated.
+     *
+     * @param turned whether each rectangle is rotated
+     * @return the copy
+     */
+    private RectangleSet turn(boolean[] turned) {
+        RectangleSet set = new RectangleSet(rectangles.size());
+        for (int i = 0; i < turned.length; i++) {
+            if (turned[i]) {
+                set.setDimensions(i, rectangles.getHeight(i), rectangles.getWidth(i));
+            }
+            else {
+                set.setDimensions(i, rectangles.getWidth(i), rectangles.getHeight(i));
+            }
+        }
+        return set;
+    }
+
+    /**
+     * Share the solution of a chain if it is the best one so far.
+     */
+    private synchronized void offer(int[] order, boolean[] turned, int width, long area) {
+        if (area < bestArea) {
+            bestOrder = order.clone();
+            bestTurned = turned.clone();
+            bestWidth = width;
+            bestArea = area;
+        }
+    }
+
+    /**
+     * Copy the best solution so far into a chain, if it is better than the current solution of the chain.
+     */
+    private synchronized void adopt(Chain chain) {
+        if (bestArea < chain.area) {
+            System.arraycopy(bestOrder, 0, chain.order, 0, bestOrder.length);
+            for (int i = 0; i < bestTurned.length; i++) {
+                if (chain.turned[i] != bestTurned[i]) {
+                    chain.flip(i);
+                }
+            }
+            chain.width = bestWidth;
+            chain.area = bestArea;
+        }
+    }
+
+    /**
+     * An annealing chain, with its own solution, decoder and random numbers.
+     */
+    private class Chain implements Runnable {
+        private int[] order;            // the order of the rectangles
+        private boolean[] turned;       // whether each rectangle is rotated
+        private RectangleSet set;       // the rectangles, with the flagged ones rotated
+        private int width;              // the width of the strip
+        private long area;              // the area of the enclosing rectangle
+        private SkylinePacking decoder;
+        private Random random;
+
+        Chain(int seed) {
+            synchronized (AnnealingPacking.this) {
+                order = bestOrder.clone();
+                turned = bestTurned.clone();
+                width = bestWidth;
+            }
+            set = turn(turned);
+            decoder = new SkylinePacking(false, fixedHeight);
+            random = new Random(seed);
+        }
+
+        @Override
+        public void run() {
+            int n = order.length;
+            area = decode();
+            offer(order, turned, width, area);
+
+            for (long iteration = 1; ; iteration++) {
+                long now = System.nanoTime();
+                if (now >= end) {
+                    break;
+                }
+                if (iteration % EXCHANGE_INTERVAL == 0) {
+                    adopt(this);
+                }
+
+                // the temperature goes down geometrically with the time spent
+                double progress = (double) (now - start) / (end - start);
+                double temperature = START_TEMPERATURE * Math.pow(END_TEMPERATURE / START_TEMPERATURE, progress);
+
+                // choose a move: rotate 20%, resize 10% (when they apply), swap 30%, move 40%
+                int i = random.nextInt(n);
+                int j = random.nextInt(n);
+                int oldWidth = width;
+                int move = random.nextInt(10);
+                if (move < 2 && canFlip(order[i])) {
+                    move = ROTATE;
+                    flip(order[i]);
+                }
+                else if (move < 3 && fixedHeight == 0) {
+                    move = RESIZE;
+                    int step = width / 20 + 1;
+                    width = Math.max(1, width + random.nextInt(2 * step + 1) - step);
+                }
+                else if (move < 6) {
+                    move = SWAP;
+                    swap(i, j);
+                }
+                else {
+                    move = SHIFT;
+                    shift(i, j);
+                }
+
+                long candidate = decode();
+                double change = (double) (candidate - area) / area;
+                if (change <= 0 || random.nextDouble() < Math.exp(-change / temperature)) {
+                    area = candidate;
+                    offer(order, turned, width, area);
+                }
+                else {
+                    // undo the move
+                    switch (move) {
+                        case ROTATE:
+                            flip(order[i]);
+                            break;
+                        case RESIZE:
+                            width = oldWidth;
+                            break;
+                        case SWAP:
+                            swap(i, j);
+                            break;
+                        case SHIFT:
+                            shift(j, i);
+                            break;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Pack the rectangles of the current solution.
+         *
+         * @return the area of the enclosing rectangle
+         */
+        private long decode() {
+            Rectangle enclosing = decoder.solver(set, order, width).getEnclosingRectangle();
+            return (long) enclosing.width * enclosing.height;
+        }
+
+        /**
+         * Check if a rectangle can be flipped.
+         */
+        private boolean canFlip(int i) {
+            if (!rotations) {
+                return false;
+            }
+            // the flipped rectangle has to fit in a fixed height
+            return fixedHeight == 0 || set.getWidth(i) <= fixedHeight;
+        }
+
+        /**
+         * Flip a rectangle.
+         */
+        private void flip(int i) {
+            turned[i] = !turned[i];
+            set.setDimensions(i, set.getHeight(i), set.getWidth(i));
+        }
+
+        /**
+         * Swap two rectangles in the order.
+         */
+        private void swap(int i, int j) {
+            int temp = order[i];
+            order[i] = order[j];
+            order[j] = temp;
+        }
+
+        /**
+         * Take the rectangle at position i out of the order and insert it at position j.
+         */
+        private void shift(int i, int j) {
+            int moved = order[i];
+            if (i < j) {
+                System.arraycopy(order, i + 1, order, i, j - i);
+            }
+            else {
+                System.arraycopy(order, j, order, j + 1, i - j);
+            }
+            order[j] = moved;
+        }
+    }
+
+    public Rectangle getEnclosingRectangle() { return enclosingRectangle; }
+}
@@ -1,6 +1,4 @@
-import java.util.Arrays;
-import java.util.Comparator;
-import java.util.Random;
+import java.nio.IntBuffer;
 
 /**
  *  Implementation of the Binary Tree Bin Packing Algorithm
@@ -20,14 +18,28 @@ import java.util.Random;
  *  This problem is solved by sorting the input first(in decreasing order).
  *
  *  Best results occur when input is sorted by height, and even better when sorted by max(width, height)
+ *
+ *  The nodes of the tree are kept in a pool of buffers (a struct of arrays indexed by the node, which is doubled
+ *  when it is full), and the sort works on buffers as well. All of them live where the rectangles live,
+ *  so packing a store outside of the heap does not create an object or an array of n integers on the heap.
  */
-public class BinaryTreeBinPacking implements Solver {
+public class BinaryTreeBinPacking implements PlacementSolver {
 
-    private Node root;                          // the root of the binary tree
+    private boolean direct;                     // whether the tree lives outside of the heap (like the rectangles)
     private boolean rotations;                  // if rotations are allowed
     private int fixedHeight;                    // the fixed height
     private SortingHeuristic heuristic = null;  // the sorting heuristic to be used
 
+    // the nodes of the binary tree, as a struct of arrays indexed by the node
+    private IntBuffer nodeX;                    // the x-coordinate of each node
+    private IntBuffer nodeY;                    // the y-coordinate of each node
+    private IntBuffer nodeWidth;                // the width of each node
+    private IntBuffer nodeHeight;               // the height of each node
+    private IntBuffer down;                     // the down child of each node; -1 if the node is not used
+    private IntBuffer right;                    // the right child of each node; -1 if the node is not used
+    private int nodes;                          // the number of nodes in the pool
+    private int root;                           // the root of the binary tree
+
     public enum SortingHeuristic {
         WIDTH,      // sort by descending width
         HEIGHT,     // sort by descending height
@@ -36,33 +48,44 @@ public class BinaryTreeBinPacking implements Solver {
     }
 
     @Override
-    public Rectangle[] solver(Rectangle[] rectangles) {
+    public Placement solver(RectangleSet rectangles) {
+        direct = rectangles.isDirect();
+
         // sort the rectangles
+        IntBuffer order;
         if (heuristic == null) {
             if (fixedHeight > 0) {
-                sort(rectangles, SortingHeuristic.MAXSIDE);
+                order = sort(rectangles, SortingHeuristic.MAXSIDE);
             } else {
-                sort(rectangles, SortingHeuristic.HEIGHT);
+                order = sort(rectangles, SortingHeuristic.HEIGHT);
             }
         }
         else {
-            sort(rectangles, this.heuristic);
+            order = sort(rectangles, this.heuristic);
         }
 
+        // the rectangles are only read, the rotations and coordinates are kept in the placement
+        Placement placement = Placement.forRectangles(rectangles);
+
         // initialize the root with the width and the height of the first rectangle
-        init(rectangles[0].width, rectangles[0].height);
+        // (each rectangle splits a node in two, so the pool is only doubled if the tree has to grow)
+        init(rectangles.getWidth(order.get(0)), rectangles.getHeight(order.get(0)), 2 * rectangles.size() + 1);
 
         // arrange the rectangles
-        for (Rectangle rectangle : rectangles) {
-            Node node = findNode(this.root, rectangle.width, rectangle.height);
-            if (node != null) {
-                rectangle.fit = splitNode(node, rectangle.width, rectangle.height);
+        for (int k = 0; k < rectangles.size(); k++) {
+            int i = order.get(k);
+            int width = rectangles.getWidth(i);
+            int height = rectangles.getHeight(i);
+            int node = findNode(this.root, width, height);
+            int fit;
+            if (node >= 0) {
+                fit = splitNode(node, width, height);
             }
             else if (rotations) {
-                rectangle.rotate();
-                node = findNode(this.root, rectangle.width, rectangle.height);
-                if (node != null) {
-                    rectangle.fit = splitNode(node, rectangle.width, rectangle.height);
+                placement.rotate(i);
+                node = findNode(this.root, height, width);
+                if (node >= 0) {
+                    fit = splitNode(node, height, width);
                 }
                 else {
                     /*int area1 = whereToGrow(rectangle.width, rectangle.height);
@@ -70,45 +93,90 @@ public class BinaryTreeBinPacking implements Solver {
                     if (area2 > area1) {
                         rectangle.rotate();
                     }*/
-                    rectangle.fit = growNode(rectangle.width, rectangle.height);
-                    if (rectangle.fit == null) {
-                        rectangle.rotate();
-                        rectangle.fit = growNode(rectangle.width, rectangle.height);
+                    fit = growNode(height, width);
+                    if (fit < 0) {
+                        placement.rotate(i);
+                        fit = growNode(width, height);
                     }
                 }
             }
             else {
-                rectangle.fit = growNode(rectangle.width, rectangle.height);
+                fit = growNode(width, height);
             }
+
+            // only keep the coordinates of the node, not the node itself
+            placement.setPosition(i, nodeX.get(fit), nodeY.get(fit));
         }
 
-        Rectangle[] placement = new Rectangle[rectangles.length];
-        for (int i = 0; i < rectangles.length; i++) {
-            placement[rectangles[i].index] = new Rectangle(rectangles[i].fit.x,
-                    this.root.height - (rectangles[i].fit.y + rectangles[i].height));
-            if (rectangles[i].rotated) {
-                placement[rectangles[i].index].rotated = true;
-            }
+        // the tree grows downwards, so flip the y-coordinates once the final height is known
+        for (int i = 0; i < rectangles.size(); i++) {
+            placement.setPosition(i, placement.getX(i),
+                    nodeHeight.get(root) - (placement.getY(i) + placement.getHeight(rectangles, i)));
         }
 
+        placement.setEnclosingRectangle(nodeWidth.get(root), nodeHeight.get(root));
+
         return placement;
     }
 
     /**
-     * Initializes the root of the Binary Tree
+     * Initializes the pool of nodes and the root of the Binary Tree
      *
      * @param width of the initial root
      * @param height of the initial root
+     * @param capacity the initial number of nodes of the pool
      */
-    private void init(int width, int height) {
+    private void init(int width, int height, int capacity) {
+        nodeX = Buffers.allocateInts(capacity, direct);
+        nodeY = Buffers.allocateInts(capacity, direct);
+        nodeWidth = Buffers.allocateInts(capacity, direct);
+        nodeHeight = Buffers.allocateInts(capacity, direct);
+        down = Buffers.allocateInts(capacity, direct);
+        right = Buffers.allocateInts(capacity, direct);
+        nodes = 0;
+
         if (fixedHeight == 0) {
-            root = new Node(0, 0, width, height);
+            root = newNode(0, 0, width, height);
         }
         else {
-            root = new Node(0, 0, width, this.fixedHeight);
+            root = newNode(0, 0, width, this.fixedHeight);
         }
     }
 
+    /**
+     * Takes a new (unused) node from the pool, which is doubled if it is full
+     *
+     * @return the new node
+     */
+    private int newNode(int x, int y, int width, int height) {
+        if (nodes == nodeX.capacity()) {
+            nodeX = grow(nodeX);
+            nodeY = grow(nodeY);
+            nodeWidth = grow(nodeWidth);
+            nodeHeight = grow(nodeHeight);
+            down = grow(down);
+            right = grow(right);
+        }
+
+        int node = nodes++;
+        nodeX.put(node, x);
+        nodeY.put(node, y);
+        nodeWidth.put(node, width);
+        nodeHeight.put(node, height);
+        down.put(node, -1);
+        right.put(node, -1);
+        return node;
+    }
+
+    /**
+     * Copies the nodes of a buffer of the pool into a buffer twice as large
+     */
+    private IntBuffer grow(IntBuffer buffer) {
+        IntBuffer grown = Buffers.allocateInts(2 * buffer.capacity(), direct);
+        grown.put(0, buffer, 0, nodes);
+        return grown;
+    }
+
     /**
      *  Constructor
      */
@@ -132,23 +200,23 @@ public class BinaryTreeBinPacking implements Solver {
      * @param root the root of the binary tree
      * @param width of the rectangle
      * @param height of the rectangle
-     * @return a node where the rectangle can be placed
+     * @return a node where the rectangle can be placed; -1 if there is none
      */
-    private Node findNode(Node root, int width, int height) {
-        if (root.used) {
-            Node node = findNode(root.right, width, height);
-            if (node != null) {
+    private int findNode(int root, int width, int height) {
+        if (down.get(root) >= 0) {
+            int node = findNode(right.get(root), width, height);
+            if (node >= 0) {
                 return node;
             }
             else {
-                return findNode(root.down, width, height);
+                return findNode(down.get(root), width, height);
             }
         }
-        else if (width <= root.width && height <= root.height) {
+        else if (width <= nodeWidth.get(root) && height <= nodeHeight.get(root)) {
             return root;
         }
         else {
-            return null;
+            return -1;
         }
     }
 
@@ -160,10 +228,17 @@ public class BinaryTreeBinPacking implements Solver {
      * @param height of the rectangle
      * @return the node to be assigned to the rectangle
      */
-    private Node splitNode(Node node, int width, int height) {
-        node.used = true;
-        node.down = new Node(node.x, node.y + height, node.width, node.height - height);
-        node.right = new Node(node.x + width, node.y, node.width - width, height);
+    private int splitNode(int node, int width, int height) {
+        int x = nodeX.get(node);
+        int y = nodeY.get(node);
+        int spaceWidth = nodeWidth.get(node);
+        int spaceHeight = nodeHeight.get(node);
+
+        // the new nodes may move the pool, so they are taken before the children are set
+        int downNode = newNode(x, y + height, spaceWidth, spaceHeight - height);
+        int rightNode = newNode(x + width, y, spaceWidth - width, height);
+        down.put(node, downNode);
+        right.put(node, rightNode);
         return node;
     }
 
@@ -172,23 +247,25 @@ public class BinaryTreeBinPacking implements Solver {
      *
      * @param width with which to grow
      * @param height with which to grow
-     * @return the node where the rectangle is placed
+     * @return the node where the rectangle is placed; -1 if the tree cannot grow
      */
-    private Node growNode(int width, int height) {
-        boolean canGrowRight = (height <= this.root.height);
-        boolean canGrowDown = (width <= this.root.width);
+    private int growNode(int width, int height) {
+        int rootWidth = nodeWidth.get(this.root);
+        int rootHeight = nodeHeight.get(this.root);
+        boolean canGrowRight = (height <= rootHeight);
+        boolean canGrowDown = (width <= rootWidth);
 
         // attempt to keep square-ish by growing right when height is much greater than width
-        boolean shouldGrowRight = canGrowRight && (this.root.height >= (this.root.width + width));
+        boolean shouldGrowRight = canGrowRight && (rootHeight >= (rootWidth + width));
         // attempt to keep square-ish by growing down when width  is much greater than height
-        boolean shouldGrowDown = canGrowDown && (this.root.width >= (this.root.height + height));
+        boolean shouldGrowDown = canGrowDown && (rootWidth >= (rootHeight + height));
 
         if (fixedHeight > 0) {
             if (canGrowRight) {
                 return growRight(width, height);
             }
             else {
-                return null;
+                return -1;
             }
         }
 
@@ -205,45 +282,49 @@ public class BinaryTreeBinPacking implements Solver {
             return growDown(width, height);
         }
         else {
-            return null; // this doesn't happen if input is sorted in decreasing order
+            return -1; // this doesn't happen if input is sorted in decreasing order
         }
     }
 
     /**
      * Auxiliary function for growNode in order to grow right
      */
-    private Node growRight(int width, int height) {
-        Node auxNode = this.root;
-        this.root = new Node(0,0, auxNode.width + width, auxNode.height);
-        this.root.used = true;
-        this.root.down = auxNode;
-        this.root.right = new Node(auxNode.width, 0, width, auxNode.height);
-
-        Node node = findNode(this.root, width, height);
-        if (node != null) {
+    private int growRight(int width, int height) {
+        int auxNode = this.root;
+        int auxWidth = nodeWidth.get(auxNode);
+        int auxHeight = nodeHeight.get(auxNode);
+        this.root = newNode(0, 0, auxWidth + width, auxHeight);
+        int rightNode = newNode(auxWidth, 0, width, auxHeight);
+        down.put(this.root, auxNode);
+        right.put(this.root, rightNode);
+
+        int node = findNode(this.root, width, height);
+        if (node >= 0) {
             return splitNode(node, width, height);
         }
         else {
-            return null;
+            return -1;
         }
     }
 
     /**
      * Auxiliary function for growNode in order to grow down
      */
-    private Node growDown(int width, int height) {
-        Node auxNode = this.root;
-        this.root = new Node(0, 0, auxNode.width, auxNode.height + height);
-        this.root.used = true;
-        this.root.down = new Node(0, auxNode.height, auxNode.width, height);
-        this.root.right = auxNode;
-
-        Node node = findNode(this.root, width, height);
-        if (node != null) {
+    private int growDown(int width, int height) {
+        int auxNode = this.root;
+        int auxWidth = nodeWidth.get(auxNode);
+        int auxHeight = nodeHeight.get(auxNode);
+        this.root = newNode(0, 0, auxWidth, auxHeight + height);
+        int downNode = newNode(0, auxHeight, auxWidth, height);
+        down.put(this.root, downNode);
+        right.put(this.root, auxNode);
+
+        int node = findNode(this.root, width, height);
+        if (node >= 0) {
             return splitNode(node, width, height);
         }
         else {
-            return null;
+            return -1;
         }
     }
 
@@ -254,25 +335,27 @@ public class BinaryTreeBinPacking implements Solver {
      * @param height of the rectangle
      */
     private int whereToGrow(int width, int height) {
-        boolean canGrowRight = (width <= this.root.height);
-        boolean canGrowDown = (height <= this.root.width);
+        int rootWidth = nodeWidth.get(this.root);
+        int rootHeight = nodeHeight.get(this.root);
+        boolean canGrowRight = (width <= rootHeight);
+        boolean canGrowDown = (height <= rootWidth);
 
         // attempt to keep square-ish by growing right when height is much greater than width
-        boolean shouldGrowRight = canGrowRight && (this.root.height >= (this.root.width + width));
+        boolean shouldGrowRight = canGrowRight && (rootHeight >= (rootWidth + width));
         // attempt to keep square-ish by growing down when width  is much greater than height
-        boolean shouldGrowDown = canGrowDown && (this.root.width >= (this.root.height + height));
+        boolean shouldGrowDown = canGrowDown && (rootWidth >= (rootHeight + height));
 
         if (shouldGrowRight) {
-            return (this.root.height * (this.root.width + width));
+            return (rootHeight * (rootWidth + width));
         }
         else if (shouldGrowDown) {
-            return (this.root.width * (this.root.height + height));
+            return (rootWidth * (rootHeight + height));
         }
         else if (canGrowRight) {
-            return (this.root.height * (this.root.width + width));
+            return (rootHeight * (rootWidth + width));
         }
         else if (canGrowDown) {
-            return (this.root.width * (this.root.height + height));
+            return (rootWidth * (rootHeight + height));
         }
         else {
             return Integer.MAX_VALUE;
@@ -280,33 +363,35 @@ public class BinaryTreeBinPacking implements Solver {
     }
 
     /**
-     * Sorts the given array according to the given heuristic
+     * Sorts the indices of the given rectangles according to the given heuristic
      *
-     * @param rectangles the array of rectangles
+     * @param rectangles the store of rectangles
      * @param heuristic sort according to this heuristic
+     * @return the indices of the rectangles in sorted order
      */
-    private void sort(Rectangle[] rectangles, SortingHeuristic heuristic) {
-        Arrays.sort(rectangles, new Comparator<Rectangle>() {
-            @Override
-            public int compare(Rectangle o1, Rectangle o2) {
-                int longSideOne = Math.max(o1.width, o1.height);
-                int longSideTwo = Math.max(o2.width, o2.height);
-                switch (heuristic) {
-                    case HEIGHT:
-                        return o2.height - o1.height;
-                    case WIDTH:
-                        return o2.width - o1.width;
-                    case AREA:
-                        int area1 = o1.width * o1.height;
-                        int area2 = o2.width * o1.height;
-                        return area2 - area1;
-                    case MAXSIDE:
-                        return longSideTwo - longSideOne;
-                }
-                return 0;
+    private IntBuffer sort(RectangleSet rectangles, SortingHeuristic heuristic) {
+        IntBuffer keys = Buffers.allocateInts(rectangles.size(), direct);
+        for (int i = 0; i < rectangles.size(); i++) {
+            int width = rectangles.getWidth(i);
+            int height = rectangles.getHeight(i);
+            switch (heuristic) {
+                case HEIGHT:
+                    keys.put(i, height);
+                    break;
+                case WIDTH:
+                    keys.put(i, width);
+                    break;
+                case AREA:
+                    keys.put(i, width * height);
+                    break;
+                case MAXSIDE:
+                    keys.put(i, Math.max(width, height));
+                    break;
             }
-        });
+        }
+
+        return RectangleSet.sortDescending(keys);
     }
 
-    public Rectangle getEnclosingRectangle() { return new Rectangle(root.width, root.height, -1); }
+    public Rectangle getEnclosingRectangle() { return new Rectangle(nodeWidth.get(root), nodeHeight.get(root), -1); }
 }
\ No newline at end of file
@@ -3,81 +3,54 @@
  * that uses multiple instance of BinaryTreeBinPacking
  * with different heuristics and picks the best one of them
  */
-public class BinaryTreePackingAllHeuristics implements Solver {
+public class BinaryTreePackingAllHeuristics implements PlacementSolver {
 
     private boolean rotations;      // if rotations are allowed
     private int fixedHeight;        // the fixed height
+    private Rectangle enclosingRectangle;   // the enclosing rectangle of the best placement
 
     @Override
-    public Rectangle[] solver(Rectangle[] rectangles) {
+    public Placement solver(RectangleSet rectangles) {
         // computer the area made up by all the rectangles that need to be placed
-        int areaRects = 0;
-        for (Rectangle rectangle: rectangles) {
-            areaRects = areaRects + (rectangle.width * rectangle.height);
+        long areaRects = 0;
+        for (int i = 0; i < rectangles.size(); i++) {
+            areaRects = areaRects + ((long) rectangles.getWidth(i) * rectangles.getHeight(i));
         }
 
-        // make copies of the rectangles array
-        Rectangle[] copyWidth = new Rectangle[rectangles.length];
-        Rectangle[] copyHeight = new Rectangle[rectangles.length];
-        Rectangle[] copyMaxside = new Rectangle[rectangles.length];
-        Rectangle[] copyArea = new Rectangle[rectangles.length];
-
-        for (int i = 0; i < rectangles.length; i++) {
-            copyWidth[i] = new Rectangle(rectangles[i].width, rectangles[i].height, rectangles[i].index);
-            copyHeight[i] = new Rectangle(rectangles[i].width, rectangles[i].height, rectangles[i].index);
-            copyMaxside[i] = new Rectangle(rectangles[i].width, rectangles[i].height, rectangles[i].index);
-            copyArea[i] = new Rectangle(rectangles[i].width, rectangles[i].height, rectangles[i].index);
+        // the heuristics, in the order in which they are preferred in case of ties
+        BinaryTreeBinPacking.SortingHeuristic[] heuristics = {
+                BinaryTreeBinPacking.SortingHeuristic.WIDTH,
+                BinaryTreeBinPacking.SortingHeuristic.HEIGHT,
+                BinaryTreeBinPacking.SortingHeuristic.AREA,
+                BinaryTreeBinPacking.SortingHeuristic.MAXSIDE,
+        };
+
+        Placement bestPlacement = null;
+        long leastWastedSpace = Long.MAX_VALUE;
+
+        for (BinaryTreeBinPacking.SortingHeuristic heuristic : heuristics) {
+            // every heuristic reads the same rectangles, no copies are needed since they are not modified
+            Placement placement = new BinaryTreeBinPacking(this.rotations, this.fixedHeight, heuristic)
+                    .solver(rectangles);
+            Rectangle enclosing = placement.getEnclosingRectangle();
+
+            long wastedSpace = (long) enclosing.width * enclosing.height - areaRects;
+
+            // keep the best placement
+            if (wastedSpace < leastWastedSpace) {
+                leastWastedSpace = wastedSpace;
+                bestPlacement = placement;
+                enclosingRectangle = enclosing;
+            }
         }
 
-        // compute the placement for WIDTH heuristic
-        Solver solverWidth = new BinaryTreeBinPacking(
-                this.rotations, this.fixedHeight, BinaryTreeBinPacking.SortingHeuristic.WIDTH);
-        Rectangle[] placementWidth = solverWidth.solver(copyWidth);
-        int wastedSpaceWidth = (((BinaryTreeBinPacking) solverWidth).getEnclosingRectangle().width *
-                ((BinaryTreeBinPacking) solverWidth).getEnclosingRectangle().height) - areaRects;
-
-        // compute the placement for HEIGHT heuristic
-        Solver solverHeight = new BinaryTreeBinPacking(
-                this.rotations, this.fixedHeight, BinaryTreeBinPacking.SortingHeuristic.HEIGHT);
-        Rectangle[] placementHeight = solverHeight.solver(copyHeight);
-        int wastedSpaceHeight = (((BinaryTreeBinPacking) solverHeight).getEnclosingRectangle().width *
-                ((BinaryTreeBinPacking) solverHeight).getEnclosingRectangle().height) - areaRects;
-
-        // compute the placement for MAXSIDE heuristic
-        Solver solverMaxside = new BinaryTreeBinPacking(
-                this.rotations, this.fixedHeight, BinaryTreeBinPacking.SortingHeuristic.MAXSIDE);
-        Rectangle[] placementMaxside = solverMaxside.solver(copyMaxside);
-        int wastedSpaceMaxside = (((BinaryTreeBinPacking) solverMaxside).getEnclosingRectangle().width *
-                ((BinaryTreeBinPacking) solverMaxside).getEnclosingRectangle().height) - areaRects;
-
-        // computer the placement for AREA heuristic
-        Solver solverArea = new BinaryTreeBinPacking(
-                this.rotations, this.fixedHeight, BinaryTreeBinPacking.SortingHeuristic.AREA);
-        Rectangle[] placementArea = solverArea.solver(copyArea);
-        int wastedSapceArea = (((BinaryTreeBinPacking) solverArea).getEnclosingRectangle().width *
-                ((BinaryTreeBinPacking) solverArea).getEnclosingRectangle().height) - areaRects;
-
-        // compute the least wasted space
-        int leastWastedSpace = Math.min(wastedSpaceWidth,
-                Math.min(wastedSpaceHeight, Math.min(wastedSpaceMaxside, wastedSapceArea)));
-
-        //return the best placement
-        if (leastWastedSpace == wastedSpaceWidth) {
-            return placementWidth;
-        }
-        else if (leastWastedSpace == wastedSpaceHeight) {
-            return placementHeight;
-        }
-        else if (leastWastedSpace == wastedSapceArea) {
-            return placementArea;
-        }
-        else {
-            return placementMaxside;
-        }
+        return bestPlacement;
     }
 
     public BinaryTreePackingAllHeuristics(boolean rotations, int fixedHeight) {
         this.rotations = rotations;
         this.fixedHeight = fixedHeight;
     }
+
+    public Rectangle getEnclosingRectangle() { return enclosingRectangle; }
 }
@@ -0,0 +1,97 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Allocation of the buffers that back the compact stores of rectangles and placements.
+ * The buffers can live on the heap, outside of the heap, or in a memory-mapped file.
+ *
+ * A buffer holds at most {@code Integer.MAX_VALUE} bytes, so a buffer of integers holds at most
+ * {@code MAX_INTS} of them (about 536 million); larger buffers are rejected with an exception.
+ */
+public class Buffers {
+    /** CONSTANTS */
+    public static final int MAX_INTS = Integer.MAX_VALUE / 4;   // the largest number of integers in a buffer
+
+    /**
+     * Allocate a buffer of integers.
+     *
+     * @param n the number of integers
+     * @param direct whether the buffer lives outside of the heap or not
+     * @return the buffer, filled with zeros
+     */
+    public static IntBuffer allocateInts(int n, boolean direct) {
+        if (direct) {
+            return ByteBuffer.allocateDirect(checkSize(4L * n)).order(ByteOrder.nativeOrder()).asIntBuffer();
+        }
+        return IntBuffer.allocate(n);
+    }
+
+    /**
+     * Allocate a buffer that holds one bit for each of the given number of elements.
+     *
+     * @param n the number of elements
+     * @param direct whether the buffer lives outside of the heap or not
+     * @return the buffer, filled with zeros
+     */
+    public static LongBuffer allocateBits(int n, boolean direct) {
+        if (direct) {
+            return ByteBuffer.allocateDirect(checkSize(8L * words(n))).order(ByteOrder.nativeOrder()).asLongBuffer();
+        }
+        return LongBuffer.allocate(words(n));
+    }
+
+    /**
+     * Map consecutive sections of a file (which is created if it does not exist yet) to little-endian buffers.
+     *
+     * @param file the path of the file
+     * @param sizes the size in bytes of each section
+     * @return a buffer for each section
+     */
+    public static ByteBuffer[] map(Path file, long... sizes) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // the mappings stay valid after the channel is closed
+            ByteBuffer[] sections = new ByteBuffer[sizes.length];
+            long position = 0;
+            for (int i = 0; i < sizes.length; i++) {
+                sections[i] = channel.map(FileChannel.MapMode.READ_WRITE, position, checkSize(sizes[i]))
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                position += sizes[i];
+            }
+            return sections;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Check that a buffer of the given number of bytes can be created.
+     *
+     * @param bytes the size of the buffer in bytes
+     * @return the size, as an int
+     * @throws IllegalArgumentException if the size does not fit in a single buffer
+     */
+    private static int checkSize(long bytes) {
+        if (bytes < 0 || bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("a buffer of " + bytes + " bytes exceeds the limit of "
+                    + Integer.MAX_VALUE + " bytes (at most " + MAX_INTS + " rectangles per store)");
+        }
+        return (int) bytes;
+    }
+
+    /**
+     * Compute the number of 64-bit words needed to hold one bit for each of the given number of elements.
+     *
+     * @param n the number of elements
+     * @return the number of words
+     */
+    public static int words(int n) {
+        return (n + 63) >>> 6;
+    }
+}
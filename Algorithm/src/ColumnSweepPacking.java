@@ -0,0 +1,878 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Exact algorithm for a small fixed height (at most {@code MAX_HEIGHT}), which finds the narrowest bin.
+ *
+ * The widths are tried in increasing order (iterative deepening), and for each width the bin is filled
+ * by sweeping its columns from left to right. In the current column, the lowest free cell either gets
+ * the bottom left corner of one of the remaining rectangles, or it is left empty, so every packing is found.
+ * The free cells of the current column are kept as a bitmask (one bit per row, hence the maximum height).
+ * The state of the sweep is the profile of the rows (how many more columns are occupied in each row),
+ * the number of columns left and the multiset of the remaining rectangles (identical rectangles are counted
+ * instead of being told apart). The states without a solution are memoised, and since the state does not
+ * depend on the width of the bin, the memo is shared by all the widths. The memo is an open addressing table
+ * of 128 bit keys, which are hashed from the packed profile and the counts of the remaining rectangles.
+ *
+ * Only the packings in which no rectangle can be pushed to the left or down are searched, and the sweep is pruned
+ * by bounds on the remaining rectangles (the area that the free part of each row can hold, the room left for
+ * each of them, the rectangles that need disjoint rows, and the columns that they certainly cover).
+ *
+ * Other instances (a free height or a taller bin) are solved by {@link OptimalRectanglePacking}. So are the
+ * instances for which the sweep needs many states, if its two phase engine is done within {@code HANDOVER_TIME}
+ * (a bin that is much larger than the rectangles, in which the sweep is slow to show that a width is too narrow),
+ * and the instances for which the memo fills up.
+ *
+ * The h7 to h25 samples with up to 10 rectangles take a few milliseconds, except 10_02_h15_ry, which is handed over
+ * and takes about 0.5 s. 25_01_h19_ry takes about 2 s, half of which is the time limit of the handover.
+ * The instances for which the memo fills up take as long as {@link OptimalRectanglePacking} itself, which is
+ * minutes for 25 rectangles (25_02, 25_03 and 25_04).
+ */
+public class ColumnSweepPacking implements Solver {
+    private final static int MAX_HEIGHT = 64;       // the tallest bin that is handled
+    private final static int MEMO_LIMIT = 1 << 20;  // the number of states without a solution before the sweep gives up
+    private final static int MEMO_CAPACITY = 1 << 12;   // the initial number of slots of the memo
+    private final static int HANDOVER_LIMIT = 1 << 8;   // the number of states before the two phase engine is tried
+    private final static long HANDOVER_TIME = 1000;     // the time limit of the two phase engine before the sweep
+                                                        // goes on, in milliseconds
+    private final static int MAX_ORIENTATIONS = 1 << 10;    // the most orientations that get their own lower bounds
+    private final static long FIRST_SEED = 0x9e3779b97f4a7c15L;     // the multiplier of the first hash of a state
+    private final static long SECOND_SEED = 0xc2b2ae3d27d4eb4fL;    // the multiplier of the second hash of a state
+
+    private boolean rotations;          // whether rectangles can be rotated or not
+    private int fixedHeight;            // the fixed height
+    private Rectangle enclosingRectangle;
+
+    private int[] classWidth;           // the width of the rectangles of each class of identical rectangles
+    private int[] classHeight;          // the height of the rectangles of each class
+    private int[] classSize;            // the number of rectangles of each class
+    private int[] relaxedWidth;         // the width of the rectangles of each class in the relaxed orientation
+    private int[] relaxedHeight;        // the height of the rectangles of each class in the relaxed orientation
+    private int[] sliceWidth;           // the narrowest slice of a row that a rectangle of each class takes
+    private int[] sliceOrder;           // the classes in the order of increasing slice width
+    private int[] remaining;            // the number of rectangles of each class that are not placed yet
+    private int remainingArea;          // the total area of the rectangles that are not placed yet
+
+    private int[] end;                  // the column at which each row stops being occupied
+    private long rectangleEnds;         // the rows in which the occupied cells end with a rectangle (not an empty cell)
+    private ArrayList<int[]> placed;    // the placed rectangles, as (class, x, y, rotated)
+    private ArrayList<int[]> unsupported;   // the rectangles above an empty cell, as (y, the last column of the rectangle)
+    private long[] memo;                // the keys of the states without a solution, two words per slot (0 if empty)
+    private int memoSize;               // the number of states in the memo
+    private int memoLimit;              // the number of states at which the sweep currently gives up
+    private long keyFirst;              // the first word of the key of the current state
+    private long keySecond;             // the second word of the key of the current state
+    private int[] freeLength;           // the length of the free part of each row (reused by the bounds)
+    private int[] load;                 // the change of the number of taken cells in each column (reused by the bounds)
+    private boolean exhausted;          // whether the sweep gave up (the memo reached its current limit)
+
+    public ColumnSweepPacking(boolean rotations, int fixedHeight) {
+        this.rotations = rotations;
+        this.fixedHeight = fixedHeight;
+    }
+
+    @Override
+    public Rectangle[] solver(Rectangle[] rectangles) {
+        if (fixedHeight == 0 || fixedHeight > MAX_HEIGHT) {
+            return fallback(rectangles);
+        }
+
+        int[] classOf = precomputeClasses(rectangles);
+
+        // the total area and the narrowest bin that every rectangle fits in
+        int totalArea = 0;
+        int minWidth = 0;
+        for (Rectangle rectangle : rectangles) {
+            totalArea += rectangle.width * rectangle.height;
+            minWidth = Math.max(minWidth, narrowestSide(rectangle));
+        }
+        if (minWidth == Integer.MAX_VALUE) {
+            // a rectangle does not fit in the fixed height at all
+            return fallback(rectangles);
+        }
+
+        // the lower bounds reject most of the widths without a sweep
+        ArrayList<LowerBounds> bounds = orientationBounds(rectangles);
+
+        // the sweep quickly finds the packings in which the rectangles fill the bin, but it may take long to show
+        // that a width is too narrow, which the two phase engine is better at. So the two phase engine gets a short
+        // time limit once the sweep has a few states in its memo, and if it is not done by then, the sweep goes on
+        // (without the states that it already knows to fail) until the memo is full
+        memo = new long[2 * MEMO_CAPACITY];
+        memoSize = 0;
+        freeLength = new int[fixedHeight];
+        memoLimit = HANDOVER_LIMIT;
+        int width = narrowestWidth(bounds, Math.max(minWidth, (totalArea + fixedHeight - 1) / fixedHeight), totalArea);
+        if (exhausted) {
+            Rectangle[] result = fallback(rectangles, HANDOVER_TIME);
+            if (result != null) {
+                return result;
+            }
+
+            memoLimit = MEMO_LIMIT;
+            width = narrowestWidth(bounds, width, totalArea);
+            if (exhausted) {
+                return fallback(rectangles);
+            }
+        }
+        enclosingRectangle = new Rectangle(width, fixedHeight, -1);
+
+        // hand out the placements of each class to its rectangles, in the order of their indices
+        ArrayList<ArrayList<int[]>> placements = new ArrayList<>();
+        for (int k = 0; k < classWidth.length; k++) {
+            placements.add(new ArrayList<>());
+        }
+        for (int[] placement : placed) {
+            placements.get(placement[0]).add(placement);
+        }
+
+        Rectangle[] result = new Rectangle[rectangles.length];
+        int[] used = new int[classWidth.length];
+        for (int i = 0; i < rectangles.length; i++) {
+            int[] placement = placements.get(classOf[i]).get(used[classOf[i]]++);
+
+            // the class may keep the rectangle in the other orientation
+            boolean flipped = rectangles[i].width != classWidth[classOf[i]];
+
+            result[i] = new Rectangle(rectangles[i]);
+            if ((placement[3] == 1) != flipped) {
+                result[i].rotate();
+            }
+            result[i].x = placement[1];
+            result[i].y = placement[2];
+        }
+
+        return result;
+    }
+
+    /**
+     * Try the widths in increasing order from the given one, the first one in which the rectangles fit is optimal
+     * (it is reached at the latest when all the rectangles are next to each other).
+     *
+     * @param bounds the lower bounds of the orientations of the rectangles
+     * @param width the narrowest width that is not known to be too narrow
+     * @param totalArea the total area of the rectangles
+     * @return the narrowest width in which the rectangles fit (they are then in {@code placed}),
+     * or the width at which the memo was full ({@code exhausted} is then set)
+     */
+    private int narrowestWidth(ArrayList<LowerBounds> bounds, int width, int totalArea) {
+        exhausted = false;
+        while (!fits(bounds, width) || !sweep(width, totalArea)) {
+            if (exhausted) {
+                return width;
+            }
+            width++;
+        }
+        return width;
+    }
+
+    /**
+     * Solve the instance with {@link OptimalRectanglePacking} instead. Its two phase engine assigns the x coordinates
+     * first, so it is not slowed down by the many ways to arrange the rectangles of a column when the bin is
+     * much larger than the rectangles.
+     *
+     * @param rectangles the given array of rectangles
+     * @return the placement of the rectangles
+     */
+    private Rectangle[] fallback(Rectangle[] rectangles) {
+        return fallback(rectangles, 0);
+    }
+
+    /**
+     * Solve the instance with {@link OptimalRectanglePacking} within the given time limit.
+     *
+     * @param rectangles the given array of rectangles
+     * @param timeLimit the time limit, in milliseconds; 0 if there is none
+     * @return the placement of the rectangles; null if it is not proven optimal within the time limit
+     */
+    private Rectangle[] fallback(Rectangle[] rectangles, long timeLimit) {
+        OptimalRectanglePacking.Engine engine = (fixedHeight > 0) ?
+                OptimalRectanglePacking.Engine.TWO_PHASE : OptimalRectanglePacking.Engine.GRID;
+        OptimalRectanglePacking solver = (timeLimit > 0) ?
+                new OptimalRectanglePacking(rotations, fixedHeight, true, engine, false, timeLimit) :
+                new OptimalRectanglePacking(rotations, fixedHeight, true, engine);
+        Rectangle[] result = solver.solver(rectangles);
+        if (!solver.isOptimal()) {
+            return null;
+        }
+
+        int width = 0;
+        int height = 0;
+        for (Rectangle rectangle : result) {
+            width = Math.max(width, rectangle.x + rectangle.width);
+            height = Math.max(height, rectangle.y + rectangle.height);
+        }
+        enclosingRectangle = new Rectangle(width, Math.max(height, fixedHeight), -1);
+
+        return result;
+    }
+
+    /**
+     * Group the identical rectangles (in any orientation, if rotations are allowed) into classes,
+     * in the order of descending area, so that the big rectangles are tried first.
+     *
+     * @param rectangles the given array of rectangles
+     * @return the class of each rectangle
+     */
+    private int[] precomputeClasses(Rectangle[] rectangles) {
+        Integer[] order = new Integer[rectangles.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return rectangles[o2].width * rectangles[o2].height - rectangles[o1].width * rectangles[o1].height;
+            }
+        });
+
+        ArrayList<int[]> classes = new ArrayList<>();
+        int[] classOf = new int[rectangles.length];
+        for (int i : order) {
+            int width = rectangles[i].width;
+            int height = rectangles[i].height;
+            if (rotations && width < height) {
+                // both orientations of a rotatable rectangle belong to the same class
+                width = rectangles[i].height;
+                height = rectangles[i].width;
+            }
+
+            int k = 0;
+            while (k < classes.size() && (classes.get(k)[0] != width || classes.get(k)[1] != height)) {
+                k++;
+            }
+            if (k == classes.size()) {
+                classes.add(new int[] {width, height, 0});
+            }
+            classes.get(k)[2]++;
+            classOf[i] = k;
+        }
+
+        classWidth = new int[classes.size()];
+        classHeight = new int[classes.size()];
+        classSize = new int[classes.size()];
+        for (int k = 0; k < classes.size(); k++) {
+            classWidth[k] = classes.get(k)[0];
+            classHeight[k] = classes.get(k)[1];
+            classSize[k] = classes.get(k)[2];
+        }
+
+        Rectangle[] relaxed = new Rectangle[classes.size()];
+        for (int k = 0; k < classes.size(); k++) {
+            relaxed[k] = new Rectangle(classWidth[k], classHeight[k], k);
+        }
+        relaxed = rotations ? relaxation(relaxed) : relaxed;
+        relaxedWidth = new int[classes.size()];
+        relaxedHeight = new int[classes.size()];
+        for (int k = 0; k < classes.size(); k++) {
+            relaxedWidth[k] = relaxed[k].width;
+            relaxedHeight[k] = relaxed[k].height;
+        }
+
+        // a rotatable rectangle that fits in the fixed height in both orientations takes its shorter side of a row
+        sliceWidth = new int[classes.size()];
+        Integer[] slices = new Integer[classes.size()];
+        for (int k = 0; k < classes.size(); k++) {
+            sliceWidth[k] = (rotations && classWidth[k] <= fixedHeight) ? classHeight[k] : classWidth[k];
+            slices[k] = k;
+        }
+        Arrays.sort(slices, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return sliceWidth[o1] - sliceWidth[o2];
+            }
+        });
+        sliceOrder = new int[classes.size()];
+        for (int k = 0; k < classes.size(); k++) {
+            sliceOrder[k] = slices[k];
+        }
+
+        return classOf;
+    }
+
+    /**
+     * Create the lower bounds for each orientation of the rectangles. Only the number of rotated rectangles
+     * of each class matters, and the rectangles that only fit in the fixed height in one orientation keep it.
+     * If there are too many orientations, the lower bounds of the relaxation are used instead.
+     *
+     * @param rectangles the given array of rectangles
+     * @return the lower bounds; the rectangles fit in a bin only if one of them does not reject it
+     */
+    private ArrayList<LowerBounds> orientationBounds(Rectangle[] rectangles) {
+        ArrayList<LowerBounds> bounds = new ArrayList<>();
+
+        // the number of orientations is the product of the class sizes (plus one) of the rotatable classes
+        long orientations = 1;
+        for (int k = 0; k < classWidth.length && rotations; k++) {
+            if (classWidth[k] <= fixedHeight && classWidth[k] != classHeight[k]) {
+                orientations *= classSize[k] + 1;
+                orientations = Math.min(orientations, MAX_ORIENTATIONS + 1);
+            }
+        }
+        if (orientations > MAX_ORIENTATIONS) {
+            bounds.add(new LowerBounds(relaxation(rectangles)));
+            return bounds;
+        }
+        if (!rotations) {
+            bounds.add(new LowerBounds(rectangles));
+            return bounds;
+        }
+
+        // count the rotated rectangles of each rotatable class like the digits of a number
+        int[] rotated = new int[classWidth.length];
+        for (long orientation = 0; orientation < orientations; orientation++) {
+            ArrayList<Rectangle> oriented = new ArrayList<>();
+            for (int k = 0; k < classWidth.length; k++) {
+                for (int i = 0; i < classSize[k]; i++) {
+                    oriented.add((i < rotated[k]) ? new Rectangle(classHeight[k], classWidth[k], k)
+                            : new Rectangle(classWidth[k], classHeight[k], k));
+                }
+            }
+            bounds.add(new LowerBounds(oriented.toArray(new Rectangle[0])));
+
+            for (int k = 0; k < classWidth.length; k++) {
+                if (classWidth[k] > fixedHeight || classWidth[k] == classHeight[k]) {
+                    continue;
+                }
+                if (rotated[k] < classSize[k]) {
+                    rotated[k]++;
+                    break;
+                }
+                rotated[k] = 0;
+            }
+        }
+
+        return bounds;
+    }
+
+    /**
+     * Check if the rectangles may fit in a bin of the given width: one of the lower bounds does not reject it.
+     */
+    private boolean fits(ArrayList<LowerBounds> bounds, int width) {
+        for (LowerBounds bound : bounds) {
+            if (bound.fits(width, fixedHeight)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Relax the instance for the lower bounds when rotations are allowed: a rectangle that only fits in the fixed
+     * height in one orientation keeps it, and any other rectangle is replaced by the square of its shorter side,
+     * which fits in it in either orientation. The rectangles fit in a bin only if the relaxation does.
+     *
+     * @param rectangles the given array of rectangles
+     * @return the relaxed rectangles
+     */
+    private Rectangle[] relaxation(Rectangle[] rectangles) {
+        Rectangle[] relaxed = new Rectangle[rectangles.length];
+
+        for (int i = 0; i < rectangles.length; i++) {
+            int width = rectangles[i].width;
+            int height = rectangles[i].height;
+
+            if (height > fixedHeight) {
+                relaxed[i] = new Rectangle(height, width, i);
+            } else if (width > fixedHeight) {
+                relaxed[i] = new Rectangle(width, height, i);
+            } else {
+                int side = Math.min(width, height);
+                relaxed[i] = new Rectangle(side, side, i);
+            }
+        }
+
+        return relaxed;
+    }
+
+    /**
+     * Find the narrowest width with which a rectangle fits in the fixed height (rotated, if that is allowed).
+     */
+    private int narrowestSide(Rectangle rectangle) {
+        int width = (rectangle.height <= fixedHeight) ? rectangle.width : Integer.MAX_VALUE;
+        if (rotations && rectangle.width <= fixedHeight) {
+            width = Math.min(width, rectangle.height);
+        }
+        return width;
+    }
+
+    /**
+     * Check if the rectangles fit in a bin of the given width.
+     *
+     * @param width the width of the bin
+     * @param totalArea the total area of the rectangles
+     * @return true if the rectangles fit (they are then in {@code placed}); false otherwise
+     */
+    private boolean sweep(int width, int totalArea) {
+        remaining = classSize.clone();
+        remainingArea = totalArea;
+        end = new int[fixedHeight];
+        load = new int[width + 1];
+        rectangleEnds = 0;
+        placed = new ArrayList<>();
+        unsupported = new ArrayList<>();
+
+        return fill(width, 0);
+    }
+
+    /**
+     * Fill the bin from the given column onwards.
+     *
+     * @param width the width of the bin
+     * @param column the current column
+     * @return true if all the remaining rectangles were placed; false otherwise
+     */
+    private boolean fill(int width, int column) {
+        if (remainingArea == 0) {
+            return true;
+        }
+        if (exhausted) {
+            return false;
+        }
+
+        // move to the first column with a free cell
+        long free = freeRows(column);
+        while (free == 0) {
+            column = nextEnd(column);
+            free = freeRows(column);
+        }
+        if (column >= width) {
+            return false;
+        }
+
+        // the sweep has passed the rectangles that are still not supported from below
+        for (int[] rectangle : unsupported) {
+            if (rectangle[1] < column) {
+                return false;
+            }
+        }
+
+        // the free cells left in the bin must hold the area of the remaining rectangles
+        int freeCells = 0;
+        for (int row = 0; row < fixedHeight; row++) {
+            freeCells += width - Math.max(end[row], column);
+        }
+        if (freeCells < remainingArea) {
+            return false;
+        }
+
+        // the remaining rectangles start in this column at the earliest, so each of them needs enough
+        // consecutive rows that are free from there up to the edge of the bin
+        for (int k = 0; k < classWidth.length; k++) {
+            if (remaining[k] > 0 && !hasRoom(width, column, classWidth[k], classHeight[k])
+                    && !(rotations && hasRoom(width, column, classHeight[k], classWidth[k]))) {
+                return false;
+            }
+        }
+        stateKey(width, column);
+        if (isFailed(keyFirst, keySecond)) {
+            return false;
+        }
+        long first = keyFirst;
+        long second = keySecond;
+
+        if (!wastedSpaceBound(width, column) || !stackingBound(width, column) || !compulsoryBound(width, column)) {
+            return false;
+        }
+
+        // the lowest free cell in the current column, and the number of free cells from it upwards
+        int lowest = Long.numberOfTrailingZeros(free);
+        int run = Long.numberOfTrailingZeros(~(free >>> lowest));
+
+        // every packing can be pushed to the left and down until each rectangle touches the bin or another rectangle
+        // on its left and below it. So a rectangle is only placed against the rows of the rectangles that end in
+        // this column, and if there is an empty cell below its corner, a rectangle that is placed later has to end
+        // right below it (the rectangle is unsupported until then)
+        long touching = -1L;
+        if (column > 0) {
+            touching = 0;
+            for (int row = lowest; row < lowest + run; row++) {
+                if (end[row] == column) {
+                    touching |= 1L << row;
+                }
+            }
+            touching &= rectangleEnds;
+        }
+
+        boolean supported = lowest == 0 || (rectangleEnds & (1L << (lowest - 1))) != 0;
+
+        int[] saved = Arrays.copyOfRange(end, lowest, lowest + run);
+        long savedEnds = rectangleEnds;
+
+        for (int k = 0; k < classWidth.length; k++) {
+            if (remaining[k] == 0) {
+                continue;
+            }
+
+            for (int rotated = 0; rotated <= 1; rotated++) {
+                if (rotated == 1 && (!rotations || classWidth[k] == classHeight[k])) {
+                    break;
+                }
+
+                int rectangleWidth = (rotated == 0) ? classWidth[k] : classHeight[k];
+                int rectangleHeight = (rotated == 0) ? classHeight[k] : classWidth[k];
+                if (rectangleHeight > run || column + rectangleWidth > width
+                        || (touching & rows(lowest, rectangleHeight)) == 0 || (!supported && rectangleWidth == 1)) {
+                    continue;
+                }
+
+                // place the rectangle with its bottom left corner in the lowest free cell
+                setEnd(lowest, rectangleHeight, column + rectangleWidth);
+                rectangleEnds |= rows(lowest, rectangleHeight);
+                remaining[k]--;
+                remainingArea -= rectangleWidth * rectangleHeight;
+                placed.add(new int[] {k, column, lowest, rotated});
+                ArrayList<int[]> nowSupported = support(column, lowest + rectangleHeight);
+                if (!supported) {
+                    unsupported.add(new int[] {lowest, column + rectangleWidth - 1});
+                }
+
+                if (fill(width, column)) {
+                    return true;
+                }
+
+                if (!supported) {
+                    unsupported.remove(unsupported.size() - 1);
+                }
+                unsupported.addAll(nowSupported);
+                placed.remove(placed.size() - 1);
+                remainingArea += rectangleWidth * rectangleHeight;
+                remaining[k]++;
+                System.arraycopy(saved, 0, end, lowest, run);
+                rectangleEnds = savedEnds;
+            }
+        }
+
+        // leave the lowest free cell empty
+        setEnd(lowest, 1, column + 1);
+        rectangleEnds &= ~(1L << lowest);
+        boolean solved = fill(width, column);
+        System.arraycopy(saved, 0, end, lowest, run);
+        rectangleEnds = savedEnds;
+
+        // once the sweep gave up, the state may not have been searched completely
+        if (!solved && !exhausted) {
+            addFailed(first, second);
+            exhausted = memoSize >= memoLimit;
+        }
+        return solved;
+    }
+
+    /**
+     * Remove the unsupported rectangles that a rectangle placed in the given column supports from below.
+     *
+     * @param column the column of the placed rectangle
+     * @param top the row right above the placed rectangle
+     * @return the removed rectangles
+     */
+    private ArrayList<int[]> support(int column, int top) {
+        ArrayList<int[]> supported = new ArrayList<>();
+
+        // the unsupported rectangles started before this column, so they are supported if they reach it
+        for (int i = unsupported.size() - 1; i >= 0; i--) {
+            if (unsupported.get(i)[0] == top && unsupported.get(i)[1] >= column) {
+                supported.add(unsupported.remove(i));
+            }
+        }
+
+        return supported;
+    }
+
+    /**
+     * Check if a rectangle can still be placed from the given column onwards: there must be enough consecutive
+     * rows that are free early enough for the rectangle to fit before the edge of the bin.
+     */
+    private boolean hasRoom(int width, int column, int rectangleWidth, int rectangleHeight) {
+        int consecutive = 0;
+        for (int row = 0; row < fixedHeight; row++) {
+            consecutive = (Math.max(end[row], column) + rectangleWidth <= width) ? consecutive + 1 : 0;
+            if (consecutive == rectangleHeight) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Each row holds slices of the remaining rectangles, and a slice only fits in the rows whose free part is at least
+     * as long (Korf's wasted space bound). The rows are filled from the shortest one with the area of the rectangles
+     * that fit in them, as if it could be divided freely, and the cells that nothing fits in are wasted.
+     * If rotations are allowed, the rectangles take their narrowest slice (see {@link #sliceWidth}).
+     *
+     * @param width the width of the bin
+     * @param column the current column
+     * @return false if the remaining rectangles cannot fit; true otherwise
+     */
+    private boolean wastedSpaceBound(int width, int column) {
+        int[] free = freeLength;
+        for (int row = 0; row < fixedHeight; row++) {
+            free[row] = width - Math.max(end[row], column);
+        }
+        Arrays.sort(free);
+
+        long area = 0;      // the area of the rectangles that fit in the rows so far and is not used yet
+        long wasted = 0;
+        long cells = 0;
+        int next = 0;
+        for (int row = 0; row < fixedHeight; row++) {
+            while (next < sliceOrder.length && sliceWidth[sliceOrder[next]] <= free[row]) {
+                int k = sliceOrder[next++];
+                area += (long) remaining[k] * classWidth[k] * classHeight[k];
+            }
+            long used = Math.min(free[row], area);
+            area -= used;
+            wasted += free[row] - used;
+            cells += free[row];
+        }
+
+        return cells - wasted >= remainingArea;
+    }
+
+    /**
+     * The rectangles that cannot share a row (their widths add up to more than the longest free part of a row)
+     * need disjoint rows. This holds for the rectangles that are wider than half of the longest free part,
+     * and for each narrower rectangle together with the rectangles that leave no room for it.
+     * If rotations are allowed, the rectangles are taken in their relaxed orientation (see {@link #relaxation}).
+     *
+     * @param width the width of the bin
+     * @param column the current column
+     * @return false if the remaining rectangles cannot fit; true otherwise
+     */
+    private boolean stackingBound(int width, int column) {
+        int[] free = freeLength;
+        int longest = 0;
+        for (int row = 0; row < fixedHeight; row++) {
+            free[row] = width - Math.max(end[row], column);
+            longest = Math.max(longest, free[row]);
+        }
+
+        for (int t = 0; t < classWidth.length; t++) {
+            if (remaining[t] == 0) {
+                continue;
+            }
+
+            // the threshold is the rectangle itself if it is narrow, and half of the longest free part otherwise
+            boolean narrow = 2 * relaxedWidth[t] <= longest;
+            int threshold = narrow ? longest - relaxedWidth[t] : longest / 2;
+            long needed = narrow ? relaxedHeight[t] : 0;
+            for (int k = 0; k < classWidth.length; k++) {
+                if (relaxedWidth[k] > threshold && (narrow || relaxedWidth[k] >= relaxedWidth[t])) {
+                    needed += (long) remaining[k] * relaxedHeight[k];
+                }
+            }
+
+            // all of them need rows that are at least as long as the narrowest of them
+            int rows = 0;
+            for (int row = 0; row < fixedHeight; row++) {
+                rows += (free[row] >= relaxedWidth[t]) ? 1 : 0;
+            }
+            if (needed > rows) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * A remaining rectangle of width w starts between its earliest column and width - w, so it certainly covers
+     * the columns from width - w up to its earliest column + w (its compulsory part). In each column, the placed
+     * rectangles and the compulsory parts of the remaining rectangles cannot take more than the height of the bin.
+     * If rotations are allowed, the rectangles are taken in their relaxed orientation (see {@link #relaxation}).
+     *
+     * @param width the width of the bin
+     * @param column the current column
+     * @return false if the remaining rectangles cannot fit; true otherwise
+     */
+    private boolean compulsoryBound(int width, int column) {
+        Arrays.fill(load, column, width + 1, 0);
+        for (int row = 0; row < fixedHeight; row++) {
+            if (end[row] > column) {
+                load[column]++;
+                load[Math.min(end[row], width)]--;
+            }
+        }
+
+        for (int k = 0; k < classWidth.length; k++) {
+            if (remaining[k] == 0) {
+                continue;
+            }
+
+            int earliest = earliestColumn(column, relaxedHeight[k]);
+            int from = width - relaxedWidth[k];
+            int to = Math.min(earliest + relaxedWidth[k], width);
+            if (from < to) {
+                load[from] += remaining[k] * relaxedHeight[k];
+                load[to] -= remaining[k] * relaxedHeight[k];
+            }
+        }
+
+        int taken = 0;
+        for (int x = column; x < width; x++) {
+            taken += load[x];
+            if (taken > fixedHeight) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Find the first column (from the given one onwards) with enough consecutive free rows for a rectangle.
+     */
+    private int earliestColumn(int column, int rectangleHeight) {
+        int earliest = Integer.MAX_VALUE;
+
+        // the rectangle fits when the last of the rows under it is free, so it is a window maximum of the ends
+        for (int row = 0; row + rectangleHeight <= fixedHeight; row++) {
+            int free = column;
+            for (int r = row; r < row + rectangleHeight; r++) {
+                free = Math.max(free, end[r]);
+            }
+            earliest = Math.min(earliest, free);
+        }
+
+        return earliest;
+    }
+
+    /**
+     * Find the free cells in the given column, as a bitmask of the rows (the bit r is set if the row r is free).
+     */
+    private long freeRows(int column) {
+        long free = 0;
+        for (int row = 0; row < fixedHeight; row++) {
+            if (end[row] <= column) {
+                free |= 1L << row;
+            }
+        }
+        return free;
+    }
+
+    /**
+     * Find the first column after the given (full) column in which a row stops being occupied.
+     */
+    private int nextEnd(int column) {
+        int next = Integer.MAX_VALUE;
+        for (int row = 0; row < fixedHeight; row++) {
+            next = Math.min(next, end[row]);
+        }
+        return Math.max(next, column + 1);
+    }
+
+    /**
+     * Get the bitmask of the given rows.
+     */
+    private long rows(int from, int rows) {
+        return ((rows == 64) ? -1L : (1L << rows) - 1) << from;
+    }
+
+    /**
+     * Set the column at which the given rows stop being occupied.
+     */
+    private void setEnd(int from, int rows, int column) {
+        for (int row = from; row < from + rows; row++) {
+            end[row] = column;
+        }
+    }
+
+    /**
+     * Compute the key of the state of the sweep into {@code keyFirst} and {@code keySecond}: the number of columns
+     * left, the number of columns that are still occupied in each row (and whether they end with a rectangle),
+     * the number of remaining rectangles of each class and the unsupported rectangles. The profile is packed
+     * into words of four rows and mixed with the counts into two independent 64 bit hashes, so two states only
+     * share a key by chance (about once in 2^128 pairs). The unsupported rectangles are added up after mixing,
+     * so that their order does not matter.
+     */
+    private void stateKey(int width, int column) {
+        long first = width - column;
+        long second = ~first;
+
+        long word = 0;
+        for (int row = 0; row < fixedHeight; row++) {
+            // whether the row ends with a rectangle only matters until the sweep has passed its end
+            long ending = (end[row] >= column) ? (rectangleEnds >>> row) & 1 : 0;
+            word = (word << 16) | (Math.max(0, end[row] - column) << 1) | ending;
+            if ((row & 3) == 3 || row == fixedHeight - 1) {
+                first = mix(first * FIRST_SEED + word);
+                second = mix(second * SECOND_SEED + word);
+                word = 0;
+            }
+        }
+
+        for (int k = 0; k < classWidth.length; k += 4) {
+            word = 0;
+            for (int i = k; i < Math.min(k + 4, classWidth.length); i++) {
+                word = (word << 16) | remaining[i];
+            }
+            first = mix(first * FIRST_SEED + word);
+            second = mix(second * SECOND_SEED + word);
+        }
+
+        long firstPending = 0;
+        long secondPending = 0;
+        for (int[] rectangle : unsupported) {
+            word = ((long) rectangle[0] << 32) | (rectangle[1] - column);
+            firstPending += mix(word * FIRST_SEED);
+            secondPending += mix(word * SECOND_SEED);
+        }
+
+        keyFirst = mix(first * FIRST_SEED + firstPending);
+        keySecond = mix(second * SECOND_SEED + secondPending) | 1;  // an empty slot is all zeros
+    }
+
+    /**
+     * Scramble the bits of a word (the finaliser of SplitMix64).
+     */
+    private static long mix(long word) {
+        word = (word ^ (word >>> 30)) * 0xbf58476d1ce4e5b9L;
+        word = (word ^ (word >>> 27)) * 0x94d049bb133111ebL;
+        return word ^ (word >>> 31);
+    }
+
+    /**
+     * Check if the state with the given key is in the memo (linear probing from the slot of the first word).
+     */
+    private boolean isFailed(long first, long second) {
+        int mask = memo.length / 2 - 1;
+        for (int slot = (int) first & mask; memo[2 * slot + 1] != 0; slot = (slot + 1) & mask) {
+            if (memo[2 * slot] == first && memo[2 * slot + 1] == second) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Add the state with the given key to the memo, which is doubled when it is half full.
+     */
+    private void addFailed(long first, long second) {
+        if (2 * (memoSize + 1) > memo.length / 2) {
+            long[] old = memo;
+            memo = new long[2 * old.length];
+            for (int slot = 0; slot < old.length / 2; slot++) {
+                if (old[2 * slot + 1] != 0) {
+                    insert(old[2 * slot], old[2 * slot + 1]);
+                }
+            }
+        }
+        insert(first, second);
+        memoSize++;
+    }
+
+    /**
+     * Put a key in the first empty slot from the slot of its first word.
+     */
+    private void insert(long first, long second) {
+        int mask = memo.length / 2 - 1;
+        int slot = (int) first & mask;
+        while (memo[2 * slot + 1] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        memo[2 * slot] = first;
+        memo[2 * slot + 1] = second;
+    }
+
+    public Rectangle getEnclosingRectangle() { return enclosingRectangle; }
+}
@@ -0,0 +1,613 @@
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Exact algorithm in the style of constraint programming, meant for the instances of medium size (10 to 25 rectangles).
+ *
+ * Each rectangle has an interval of x coordinates and an interval of y coordinates (its domain), and an orientation
+ * if rotations are allowed. After each decision, the domains are narrowed by propagating two kinds of constraints:
+ * <ul>
+ *     <li>non-overlap: the compulsory part of a rectangle (the cells that it covers wherever it ends up in its
+ *     domain) is a forbidden region for the other rectangles. The smallest and the largest coordinate of a rectangle
+ *     are found by a sweep, which jumps over the forbidden regions that cover all of its other coordinates</li>
+ *     <li>cumulative, on each axis: the compulsory parts that cross a column cannot be taller than the bin,
+ *     and the ones that cross a row cannot be wider than the bin</li>
+ * </ul>
+ * The rectangles are decided in the order of descending area: first the orientations and the x coordinates of all
+ * of them, then their y coordinates, trying the smallest coordinate first.
+ *
+ * The area of the bin is bisected between a lower bound and the area of a heuristic placement. The search stops
+ * at the time limit, and the best placement found so far is returned; it is optimal if the search finished in time.
+ * With the default time limit of one second, this is not always the case for 7 or more rectangles with rotations
+ * and a free height, so the callers that need an optimal placement have to check {@link #isOptimal()}
+ * (or give the solver more time).
+ */
+public class ConstraintRectanglePacking implements Solver {
+    private final static long DEFAULT_TIME_LIMIT = 1000;    // the default time limit, in milliseconds
+    private final static int CLOCK_INTERVAL = 1 << 6;       // the number of search nodes between checks of the clock
+
+    private boolean rotations;          // whether rectangles can be rotated or not
+    private int fixedHeight;            // the fixed height; 0 if the height is free
+    private long timeLimit;             // the time limit, in milliseconds
+    private Rectangle enclosingRectangle;
+    private boolean optimal;            // whether the last placement is proven optimal
+
+    private int n;                      // the number of rectangles
+    private int[] index;                // the index of each rectangle in the input, in the order of descending area
+    private int[] width;                // the width of each rectangle, in the order of descending area
+    private int[] height;               // the height of each rectangle, in the order of descending area
+    private LowerBounds bounds;         // the lower bounds of the instance; null if rotations are allowed
+
+    private int binWidth;               // the width of the current bin
+    private int binHeight;              // the height of the current bin
+    private int[] xLo, xHi;             // the domain of the x coordinate of each rectangle
+    private int[] yLo, yHi;             // the domain of the y coordinate of each rectangle
+    private int[] orientation;          // the orientation of each rectangle: 0 as given, 1 rotated, -1 not decided yet
+
+    private long deadline;              // the time at which the search stops (System.nanoTime)
+    private long nodes;                 // the number of search nodes so far
+    private boolean timedOut;           // whether the search stopped at its time limit
+
+    public ConstraintRectanglePacking(boolean rotations, int fixedHeight) {
+        this(rotations, fixedHeight, DEFAULT_TIME_LIMIT);
+    }
+
+    /**
+     * Constructor with the choice of the time limit.
+     *
+     * @param timeLimit the time limit, in milliseconds
+     */
+    public ConstraintRectanglePacking(boolean rotations, int fixedHeight, long timeLimit) {
+        this.rotations = rotations;
+        this.fixedHeight = fixedHeight;
+        this.timeLimit = timeLimit;
+    }
+
+    @Override
+    public Rectangle[] solver(Rectangle[] rectangles) {
+        long end = System.nanoTime() + timeLimit * 1000000L;
+        nodes = 0;
+
+        // the heuristic placement bounds the area from above (the heuristic works on copies of the rectangles)
+        Rectangle[] copies = new Rectangle[rectangles.length];
+        for (int i = 0; i < rectangles.length; i++) {
+            copies[i] = new Rectangle(rectangles[i]);
+        }
+        MaximalRectanglesAllHeuristics heuristic = new MaximalRectanglesAllHeuristics(rotations, fixedHeight);
+        Rectangle[] best = heuristic.solver(copies);
+        enclosingRectangle = heuristic.getEnclosingRectangle();
+
+        precompute(rectangles);
+
+        long upper = (long) enclosingRectangle.width * enclosingRectangle.height;
+        long lower = lowerBound(upper);
+
+        // bisect the area: every area below the lower bound is infeasible, and a bin of the upper bound is known.
+        // Each probe may take all the time that is left: if it runs out, the search stops, since a larger area
+        // would skip the ones in between, which are not proven infeasible
+        deadline = end;
+        timedOut = false;
+        while (lower < upper && !timedOut) {
+            long middle = (lower + upper) / 2;
+
+            Rectangle[] placement = solveArea(middle);
+            if (placement != null) {
+                best = placement;
+                upper = (long) enclosingRectangle.width * enclosingRectangle.height;
+            } else if (!timedOut) {
+                lower = middle + 1;
+            }
+        }
+
+        optimal = lower >= upper;
+        return best;
+    }
+
+    /**
+     * Sort the rectangles in the order of descending area, which is the order in which they are decided.
+     *
+     * @param rectangles the given array of rectangles
+     */
+    private void precompute(Rectangle[] rectangles) {
+        n = rectangles.length;
+
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return Long.compare((long) rectangles[o2].width * rectangles[o2].height,
+                        (long) rectangles[o1].width * rectangles[o1].height);
+            }
+        });
+
+        index = new int[n];
+        width = new int[n];
+        height = new int[n];
+        for (int i = 0; i < n; i++) {
+            index[i] = order[i];
+            width[i] = rectangles[order[i]].width;
+            height[i] = rectangles[order[i]].height;
+        }
+
+        bounds = rotations ? null : new LowerBounds(rectangles);
+    }
+
+    /**
+     * Compute a lower bound on the area of the smallest bin.
+     *
+     * @param upper the area of a bin that the rectangles are known to fit in
+     * @return the lower bound
+     */
+    private long lowerBound(long upper) {
+        if (bounds != null) {
+            return bounds.minimumArea(fixedHeight, upper);
+        }
+
+        long area = 0;
+        for (int i = 0; i < n; i++) {
+            area += (long) width[i] * height[i];
+        }
+        if (fixedHeight > 0) {
+            // the bin cannot be narrower than the widest rectangle in its narrowest orientation
+            int minWidth = Math.max(1, minimumSide());
+            return Math.max(minWidth, (area + fixedHeight - 1) / fixedHeight) * (long) fixedHeight;
+        }
+        return area;
+    }
+
+    /**
+     * Find the smallest side that every bin needs: the largest side of a rectangle in its narrowest orientation.
+     */
+    private int minimumSide() {
+        int side = 0;
+        for (int i = 0; i < n; i++) {
+            side = Math.max(side, Math.min(width[i], height[i]));
+        }
+        return side;
+    }
+
+    /**
+     * Look for a placement in a bin with at most the given area.
+     *
+     * @param maxArea the largest area of the bin
+     * @return the placement (the enclosing rectangle is then updated); null if none was found
+     */
+    private Rectangle[] solveArea(long maxArea) {
+        int minWidth = 0;
+        int minHeight = 0;
+        for (int i = 0; i < n; i++) {
+            minWidth = Math.max(minWidth, rotations ? Math.min(width[i], height[i]) : width[i]);
+            minHeight = Math.max(minHeight, rotations ? Math.min(width[i], height[i]) : height[i]);
+        }
+
+        if (fixedHeight > 0) {
+            long binWidth = maxArea / fixedHeight;
+            if (binWidth < minWidth || !contains((int) binWidth, fixedHeight)) {
+                return null;
+            }
+            return placement();
+        }
+
+        for (long binHeight = minHeight; binHeight * minWidth <= maxArea; binHeight++) {
+            long binWidth = maxArea / binHeight;
+
+            // a taller bin of the same width holds everything that this one does
+            if (maxArea / (binHeight + 1) == binWidth) {
+                continue;
+            }
+            if (contains((int) binWidth, (int) binHeight)) {
+                return placement();
+            }
+            if (timedOut) {
+                return null;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Create the placement of the rectangles from their (decided) domains, and update the enclosing rectangle.
+     */
+    private Rectangle[] placement() {
+        Rectangle[] result = new Rectangle[n];
+        int usedWidth = 0;
+        int usedHeight = 0;
+
+        for (int i = 0; i < n; i++) {
+            Rectangle rectangle = new Rectangle(width[i], height[i], index[i]);
+            if (orientation[i] == 1) {
+                rectangle.rotate();
+            }
+            rectangle.x = xLo[i];
+            rectangle.y = yLo[i];
+            result[index[i]] = rectangle;
+
+            usedWidth = Math.max(usedWidth, rectangle.x + rectangle.width);
+            usedHeight = Math.max(usedHeight, rectangle.y + rectangle.height);
+        }
+
+        enclosingRectangle = new Rectangle(usedWidth, (fixedHeight > 0) ? fixedHeight : usedHeight, -1);
+        return result;
+    }
+
+    /**
+     * Solve the containment problem: can the rectangles be placed in a bin of the given dimensions?
+     *
+     * @return true if the rectangles fit (the domains are then decided); false otherwise, or at the time limit
+     */
+    private boolean contains(int binWidth, int binHeight) {
+        if (bounds != null && !bounds.fits(binWidth, binHeight)) {
+            return false;
+        }
+
+        this.binWidth = binWidth;
+        this.binHeight = binHeight;
+        xLo = new int[n];
+        xHi = new int[n];
+        yLo = new int[n];
+        yHi = new int[n];
+        orientation = new int[n];
+
+        for (int i = 0; i < n; i++) {
+            boolean given = width[i] <= binWidth && height[i] <= binHeight;
+            boolean rotated = rotations && height[i] <= binWidth && width[i] <= binHeight;
+            if (!given && !rotated) {
+                return false;
+            }
+            // squares and the rectangles that only fit in one orientation are decided right away
+            orientation[i] = (given && rotated && width[i] != height[i]) ? -1 : (given ? 0 : 1);
+
+            xHi[i] = binWidth - size(i, true);
+            yHi[i] = binHeight - size(i, false);
+        }
+
+        // any placement can be mirrored, so the largest rectangle is kept in the lower left quarter of the bin
+        xHi[0] = (binWidth - size(0, true)) / 2;
+        yHi[0] = (binHeight - size(0, false)) / 2;
+
+        return propagate() && search();
+    }
+
+    /**
+     * Search for the values of the undecided orientations and coordinates.
+     *
+     * @return true if a placement was found; false otherwise, or at the time limit
+     */
+    private boolean search() {
+        if (++nodes % CLOCK_INTERVAL == 0 && System.nanoTime() > deadline) {
+            timedOut = true;
+        }
+        if (timedOut) {
+            return false;
+        }
+
+        // the first rectangle (in the order of descending area) with an undecided orientation or x coordinate,
+        // and once they are all decided, the first one with an undecided y coordinate
+        int rectangle = -1;
+        for (int i = 0; i < n && rectangle < 0; i++) {
+            if (orientation[i] < 0 || xLo[i] < xHi[i]) {
+                rectangle = i;
+            }
+        }
+        for (int i = 0; i < n && rectangle < 0; i++) {
+            if (yLo[i] < yHi[i]) {
+                rectangle = i;
+            }
+        }
+        if (rectangle < 0) {
+            // all the domains are decided, and the propagation leaves no overlap
+            return true;
+        }
+
+        int[][] saved = save();
+
+        if (orientation[rectangle] < 0) {
+            for (int o = 0; o <= 1; o++) {
+                orientation[rectangle] = o;
+                if (propagate() && search()) {
+                    return true;
+                }
+                restore(saved);
+            }
+            return false;
+        }
+
+        // either the coordinate takes the smallest value of its domain, or that value is removed
+        boolean horizontal = xLo[rectangle] < xHi[rectangle];
+        int[] lo = horizontal ? xLo : yLo;
+        int[] hi = horizontal ? xHi : yHi;
+        int value = lo[rectangle];
+
+        hi[rectangle] = value;
+        if (propagate() && search()) {
+            return true;
+        }
+        restore(saved);
+
+        lo = horizontal ? xLo : yLo;
+        lo[rectangle] = value + 1;
+        return propagate() && search();
+    }
+
+    /**
+     * Propagate the constraints until none of them narrows a domain any more.
+     *
+     * @return false if a domain became empty; true otherwise
+     */
+    private boolean propagate() {
+        boolean changed = true;
+
+        // the rectangles have to stay inside the bin in their (smallest) orientation
+        for (int i = 0; i < n; i++) {
+            xHi[i] = Math.min(xHi[i], binWidth - size(i, true));
+            yHi[i] = Math.min(yHi[i], binHeight - size(i, false));
+            if (xLo[i] > xHi[i] || yLo[i] > yHi[i]) {
+                return false;
+            }
+        }
+
+        while (changed) {
+            changed = false;
+
+            for (int i = 0; i < n; i++) {
+                int[] narrowed = {
+                        Math.max(sweepLow(i, true), cumulativeLow(i, true)),
+                        Math.min(sweepHigh(i, true), cumulativeHigh(i, true)),
+                        Math.max(sweepLow(i, false), cumulativeLow(i, false)),
+                        Math.min(sweepHigh(i, false), cumulativeHigh(i, false))
+                };
+                if (narrowed[0] > narrowed[1] || narrowed[2] > narrowed[3]) {
+                    return false;
+                }
+
+                changed |= narrowed[0] != xLo[i] || narrowed[1] != xHi[i]
+                        || narrowed[2] != yLo[i] || narrowed[3] != yHi[i];
+                xLo[i] = narrowed[0];
+                xHi[i] = narrowed[1];
+                yLo[i] = narrowed[2];
+                yHi[i] = narrowed[3];
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Find the smallest coordinate of a rectangle along one axis that is not forbidden by the compulsory parts
+     * of the other rectangles for all of its coordinates along the other axis. The sweep point starts at the smallest
+     * coordinate of the domain, and if the forbidden regions that contain it cover the other axis, it jumps to
+     * the first coordinate after the region that ends first.
+     *
+     * @param i the rectangle
+     * @param horizontal true for the x axis; false for the y axis
+     * @return the smallest coordinate; larger than the domain if there is none
+     */
+    private int sweepLow(int i, boolean horizontal) {
+        int[] lo = horizontal ? xLo : yLo;
+        int[] hi = horizontal ? xHi : yHi;
+
+        int position = lo[i];
+        while (position <= hi[i]) {
+            int next = Integer.MAX_VALUE;
+            int[][] forbidden = forbiddenRegions(i, horizontal, position);
+            if (!covers(forbidden, i, horizontal)) {
+                return position;
+            }
+            for (int[] region : forbidden) {
+                next = Math.min(next, region[3]);
+            }
+            position = next;
+        }
+
+        return position;
+    }
+
+    /**
+     * Find the largest coordinate of a rectangle along one axis, like {@link #sweepLow}, with the sweep point
+     * starting at the largest coordinate of the domain and jumping before the region that starts last.
+     *
+     * @param i the rectangle
+     * @param horizontal true for the x axis; false for the y axis
+     * @return the largest coordinate; smaller than the domain if there is none
+     */
+    private int sweepHigh(int i, boolean horizontal) {
+        int[] lo = horizontal ? xLo : yLo;
+        int[] hi = horizontal ? xHi : yHi;
+
+        int position = hi[i];
+        while (position >= lo[i]) {
+            int next = Integer.MIN_VALUE;
+            int[][] forbidden = forbiddenRegions(i, horizontal, position);
+            if (!covers(forbidden, i, horizontal)) {
+                return position;
+            }
+            for (int[] region : forbidden) {
+                next = Math.max(next, region[2] - 1);
+            }
+            position = next;
+        }
+
+        return position;
+    }
+
+    /**
+     * Find the regions that the compulsory parts of the other rectangles forbid for the bottom left corner
+     * of a rectangle, at a coordinate along one axis.
+     *
+     * @param i the rectangle
+     * @param horizontal true for the x axis; false for the y axis
+     * @param position the coordinate along the axis
+     * @return the regions, as (first and last forbidden coordinate along the other axis,
+     *         first and last forbidden coordinate along the axis plus one)
+     */
+    private int[][] forbiddenRegions(int i, boolean horizontal, int position) {
+        int[] lo = horizontal ? xLo : yLo;
+        int[] hi = horizontal ? xHi : yHi;
+        int[] otherLo = horizontal ? yLo : xLo;
+        int[] otherHi = horizontal ? yHi : xHi;
+
+        int[][] regions = new int[n][];
+        int count = 0;
+
+        for (int j = 0; j < n; j++) {
+            if (j == i) {
+                continue;
+            }
+
+            // the compulsory part of the other rectangle
+            int start = hi[j];
+            int end = lo[j] + size(j, horizontal);
+            int otherStart = otherHi[j];
+            int otherEnd = otherLo[j] + size(j, !horizontal);
+            if (start >= end || otherStart >= otherEnd) {
+                continue;
+            }
+
+            if (position > start - size(i, horizontal) && position < end) {
+                regions[count++] = new int[] {otherStart - size(i, !horizontal) + 1, otherEnd - 1,
+                        start - size(i, horizontal) + 1, end};
+            }
+        }
+
+        return Arrays.copyOf(regions, count);
+    }
+
+    /**
+     * Check if the forbidden regions cover all the coordinates of a rectangle along the other axis.
+     */
+    private boolean covers(int[][] regions, int i, boolean horizontal) {
+        int from = horizontal ? yLo[i] : xLo[i];
+        int to = horizontal ? yHi[i] : xHi[i];
+
+        Arrays.sort(regions, new Comparator<int[]>() {
+            @Override
+            public int compare(int[] o1, int[] o2) {
+                return o1[0] - o2[0];
+            }
+        });
+
+        // the first coordinate that is not covered yet
+        int uncovered = from;
+        for (int[] region : regions) {
+            if (region[0] > uncovered) {
+                break;
+            }
+            uncovered = Math.max(uncovered, region[1] + 1);
+        }
+
+        return uncovered > to;
+    }
+
+    /**
+     * Find the smallest coordinate of a rectangle along one axis at which the rectangle, together with
+     * the compulsory parts of the other rectangles, does not exceed the bin in any line across the axis.
+     *
+     * @param i the rectangle
+     * @param horizontal true for the x axis (the columns cannot be taller than the bin); false for the y axis
+     * @return the smallest coordinate; larger than the domain if there is none
+     */
+    private int cumulativeLow(int i, boolean horizontal) {
+        int[] profile = profile(i, horizontal);
+        int capacity = horizontal ? binHeight : binWidth;
+        int[] lo = horizontal ? xLo : yLo;
+        int[] hi = horizontal ? xHi : yHi;
+
+        int position = lo[i];
+        int line = position;
+        while (position <= hi[i] && line < position + size(i, horizontal)) {
+            if (profile[line] + size(i, !horizontal) > capacity) {
+                position = line + 1;
+            }
+            line++;
+        }
+
+        return position;
+    }
+
+    /**
+     * Find the largest coordinate of a rectangle along one axis, like {@link #cumulativeLow}.
+     */
+    private int cumulativeHigh(int i, boolean horizontal) {
+        int[] profile = profile(i, horizontal);
+        int capacity = horizontal ? binHeight : binWidth;
+        int[] lo = horizontal ? xLo : yLo;
+        int[] hi = horizontal ? xHi : yHi;
+
+        int position = hi[i];
+        int line = position + size(i, horizontal) - 1;
+        while (position >= lo[i] && line >= position) {
+            if (profile[line] + size(i, !horizontal) > capacity) {
+                position = line - size(i, horizontal);
+            }
+            line--;
+        }
+
+        return position;
+    }
+
+    /**
+     * Compute the total size of the compulsory parts of the other rectangles in each line across an axis.
+     *
+     * @param i the rectangle that is left out
+     * @param horizontal true for the columns (the sizes are heights); false for the rows (the sizes are widths)
+     * @return the profile along the axis
+     */
+    private int[] profile(int i, boolean horizontal) {
+        int[] lo = horizontal ? xLo : yLo;
+        int[] hi = horizontal ? xHi : yHi;
+        int[] profile = new int[(horizontal ? binWidth : binHeight) + 1];
+
+        for (int j = 0; j < n; j++) {
+            int start = hi[j];
+            int end = lo[j] + size(j, horizontal);
+            if (j == i || start >= end) {
+                continue;
+            }
+            for (int line = start; line < end; line++) {
+                profile[line] += size(j, !horizontal);
+            }
+        }
+
+        return profile;
+    }
+
+    /**
+     * Get the size of a rectangle along an axis, in its orientation. A rectangle with an undecided orientation
+     * takes its shorter side along both axes, which it covers in either orientation.
+     */
+    private int size(int i, boolean horizontal) {
+        if (orientation[i] < 0) {
+            return Math.min(width[i], height[i]);
+        }
+        return (horizontal == (orientation[i] == 0)) ? width[i] : height[i];
+    }
+
+    /**
+     * Save the domains, to restore them when backtracking.
+     */
+    private int[][] save() {
+        return new int[][] {xLo.clone(), xHi.clone(), yLo.clone(), yHi.clone(), orientation.clone()};
+    }
+
+    /**
+     * Restore the saved domains.
+     */
+    private void restore(int[][] saved) {
+        xLo = saved[0].clone();
+        xHi = saved[1].clone();
+        yLo = saved[2].clone();
+        yHi = saved[3].clone();
+        orientation = saved[4].clone();
+    }
+
+    public Rectangle getEnclosingRectangle() { return enclosingRectangle; }
+
+    /**
+     * Check if the last placement is proven optimal (the search finished before the time limit).
+     */
+    public boolean isOptimal() { return optimal; }
+}
@@ -0,0 +1,125 @@
+/**
+ * Scaling of an instance by the common divisors of its dimensions.
+ *
+ * When all the widths (or all the heights) of the rectangles have a common divisor, every packing can be pushed
+ * to the left and to the bottom until all the coordinates are multiples of it, so the instance can be solved
+ * with the dimensions divided by it and the placement scaled back up, without losing any packing.
+ * A fixed height is rounded down to a multiple of the divisor of the heights, since the rest of it can never be used.
+ * If rotations are allowed, a width can become a height, so the same divisor (of all the sides) is used for both.
+ */
+public class DimensionScaling {
+    private int widthDivisor;       // the common divisor of the widths
+    private int heightDivisor;      // the common divisor of the heights
+    private int fixedHeight;        // the fixed height; 0 if the height is free
+
+    /**
+     * Find the common divisors of the dimensions of the given rectangles.
+     *
+     * @param rectangles the given array of rectangles
+     * @param rotations whether the rectangles can be rotated or not
+     * @param fixedHeight the fixed height; 0 if the height is free
+     */
+    public DimensionScaling(Rectangle[] rectangles, boolean rotations, int fixedHeight) {
+        this.fixedHeight = fixedHeight;
+
+        for (Rectangle rectangle : rectangles) {
+            widthDivisor = gcd(widthDivisor, rectangle.width);
+            heightDivisor = gcd(heightDivisor, rectangle.height);
+        }
+
+        if (rotations) {
+            widthDivisor = gcd(widthDivisor, heightDivisor);
+            heightDivisor = widthDivisor;
+        }
+
+        // an empty instance is not scaled, and neither is one whose rectangles are all taller than the fixed height
+        widthDivisor = Math.max(widthDivisor, 1);
+        heightDivisor = Math.max(heightDivisor, 1);
+        if (fixedHeight > 0 && fixedHeight < heightDivisor) {
+            widthDivisor = 1;
+            heightDivisor = 1;
+        }
+    }
+
+    /**
+     * Check if the scaling does not change the instance.
+     *
+     * @return true if there is no common divisor (other than 1); false otherwise
+     */
+    public boolean isIdentity() {
+        return widthDivisor == 1 && heightDivisor == 1;
+    }
+
+    /**
+     * Get the fixed height of the scaled instance.
+     *
+     * @return the scaled fixed height; 0 if the height is free
+     */
+    public int getHeight() {
+        return fixedHeight / heightDivisor;
+    }
+
+    /**
+     * Create scaled down copies of the given rectangles.
+     *
+     * @param rectangles the given array of rectangles
+     * @return the copies, with the dimensions divided by the common divisors
+     */
+    public Rectangle[] scaleDown(Rectangle[] rectangles) {
+        Rectangle[] scaled = new Rectangle[rectangles.length];
+
+        for (int i = 0; i < rectangles.length; i++) {
+            scaled[i] = new Rectangle(rectangles[i]);
+            scaled[i].width /= widthDivisor;
+            scaled[i].height /= heightDivisor;
+        }
+
+        return scaled;
+    }
+
+    /**
+     * Create scaled up copies of the rectangles of a placement of the scaled instance.
+     *
+     * @param rectangles the placed rectangles of the scaled instance
+     * @return the copies, with the dimensions and the coordinates multiplied by the common divisors
+     */
+    public Rectangle[] scaleUp(Rectangle[] rectangles) {
+        Rectangle[] scaled = new Rectangle[rectangles.length];
+
+        for (int i = 0; i < rectangles.length; i++) {
+            scaled[i] = new Rectangle(rectangles[i]);
+            scaled[i].x *= widthDivisor;
+            scaled[i].y *= heightDivisor;
+            scaled[i].width *= widthDivisor;
+            scaled[i].height *= heightDivisor;
+        }
+
+        return scaled;
+    }
+
+    /**
+     * Scale up the width of a bin of the scaled instance.
+     */
+    public int scaleUpWidth(int width) {
+        return width * widthDivisor;
+    }
+
+    /**
+     * Scale up the height of a bin of the scaled instance (a fixed height is restored as it was).
+     */
+    public int scaleUpHeight(int height) {
+        return (fixedHeight > 0) ? fixedHeight : height * heightDivisor;
+    }
+
+    /**
+     * Compute the greatest common divisor of two numbers (the gcd of 0 and a is a).
+     */
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int temp = a % b;
+            a = b;
+            b = temp;
+        }
+        return a;
+    }
+}
@@ -0,0 +1,299 @@
+import java.util.Arrays;
+
+/**
+ * Lower bounds for packing a set of rectangles (in a fixed orientation) into an enclosing bin.
+ *
+ * A bin is rejected without any search if one of the following bounds shows that the rectangles cannot fit:
+ * <ul>
+ *     <li>the area bound: the total area of the rectangles cannot exceed the area of the bin</li>
+ *     <li>the L2 bound: the rectangles that are wider than half of the bin are stacked on top of each other,
+ *     and the narrower ones have to fit in the space that is left next to them and above them</li>
+ *     <li>the dual feasible function bounds: the area bound still holds after the widths and the heights
+ *     are transformed by dual feasible functions (Fekete and Schepers), which enlarge the big rectangles
+ *     and shrink the small ones</li>
+ *     <li>the wasted space bound: each row of the bin holds a slice of some of the rectangles, whose widths
+ *     add up to at most the largest subset sum of the widths that fits in the bin (Korf), and the remaining
+ *     cells of the row are wasted</li>
+ * </ul>
+ * All the bounds are applied to the rows and to the columns of the bin.
+ */
+public class LowerBounds {
+    private int n;              // the number of rectangles
+    private int[] width;        // the width of each rectangle
+    private int[] height;       // the height of each rectangle
+    private long totalArea;     // the total area of the rectangles
+    private int maxWidth;       // the width of the widest rectangle
+    private int maxHeight;      // the height of the tallest rectangle
+
+    /**
+     * Create the lower bounds for the given rectangles, in their current orientation.
+     *
+     * @param rectangles the given array of rectangles
+     */
+    public LowerBounds(Rectangle[] rectangles) {
+        this.n = rectangles.length;
+        this.width = new int[n];
+        this.height = new int[n];
+
+        for (int i = 0; i < n; i++) {
+            width[i] = rectangles[i].width;
+            height[i] = rectangles[i].height;
+            totalArea += (long) width[i] * height[i];
+            maxWidth = Math.max(maxWidth, width[i]);
+            maxHeight = Math.max(maxHeight, height[i]);
+        }
+    }
+
+    /**
+     * Check if the rectangles may fit in a bin of the given dimensions. If not, they certainly do not fit.
+     *
+     * @param binWidth the width of the bin
+     * @param binHeight the height of the bin
+     * @return false if one of the bounds shows that the rectangles cannot fit; true otherwise
+     */
+    public boolean fits(int binWidth, int binHeight) {
+        if (maxWidth > binWidth || maxHeight > binHeight || totalArea > (long) binWidth * binHeight) {
+            return false;
+        }
+
+        return l2Bound(width, height, binWidth, binHeight) && l2Bound(height, width, binHeight, binWidth)
+                && dualFeasibleBound(binWidth, binHeight)
+                && wastedSpaceBound(width, binWidth, binHeight) && wastedSpaceBound(height, binHeight, binWidth);
+    }
+
+    /**
+     * Compute a lower bound on the area of the smallest bin (with the given height, if fixed) that the rectangles
+     * fit in: the area of the smallest bin that is not rejected by the bounds.
+     *
+     * @param fixedHeight the height of the bin; 0 if the height is free
+     * @param upperBound the area of a bin that the rectangles are known to fit in
+     * @return the lower bound; the upper bound if no smaller bin is left
+     */
+    public long minimumArea(int fixedHeight, long upperBound) {
+        long best = upperBound;
+
+        int minHeight = (fixedHeight > 0) ? fixedHeight : maxHeight;
+        long maxHeight = (fixedHeight > 0) ? fixedHeight : (upperBound - 1) / maxWidth;
+
+        for (int binHeight = minHeight; binHeight <= maxHeight; binHeight++) {
+            // only the narrowest bin of each height that is not rejected matters
+            for (long binWidth = Math.max(maxWidth, (totalArea + binHeight - 1) / binHeight);
+                 binWidth * binHeight < best; binWidth++) {
+                if (fits((int) binWidth, binHeight)) {
+                    best = binWidth * binHeight;
+                    break;
+                }
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * The L2 bound in one direction. The rectangles that are wider than half of the bin cannot be placed
+     * next to each other, so their heights add up. For a threshold k, the rectangles that are wider than
+     * binWidth - k leave no room for the rectangles with a width of at least k (up to half of the bin) in their
+     * rows, so those can only use the space next to the other wide rectangles and the rows above all of them.
+     * In particular, the rectangle of the threshold needs rows of its own next to the ones that leave no room for it.
+     *
+     * @param size the size of the rectangles along the rows
+     * @param other the size of the rectangles along the columns
+     * @param binSize the size of the bin along the rows
+     * @param binOther the size of the bin along the columns
+     * @return false if the rectangles cannot fit; true otherwise
+     */
+    private boolean l2Bound(int[] size, int[] other, int binSize, int binOther) {
+        // the thresholds are 0 and the sizes of the rectangles that are at most half of the bin
+        for (int t = -1; t < n; t++) {
+            int k = (t < 0) ? 0 : size[t];
+            if (t >= 0 && 2 * k > binSize) {
+                continue;
+            }
+
+            long stacked = 0;       // the total height of the wide rectangles
+            long beside = 0;        // the total height of the rectangles that leave no room for the threshold rectangle
+            long freeNext = 0;      // the free area next to the wide rectangles that leave room for a narrow one
+            long narrowArea = 0;    // the total area of the narrow rectangles
+            for (int i = 0; i < n; i++) {
+                if (size[i] > binSize - k) {
+                    stacked += other[i];
+                    beside += (i != t) ? other[i] : 0;
+                } else if (2 * size[i] > binSize) {
+                    stacked += other[i];
+                    freeNext += (long) (binSize - size[i]) * other[i];
+                } else if (size[i] >= k) {
+                    narrowArea += (long) size[i] * other[i];
+                }
+            }
+
+            long needed = stacked + Math.max(0, (narrowArea - freeNext + binSize - 1) / binSize);
+            if (needed > binOther) {
+                return false;
+            }
+
+            // the threshold rectangle itself cannot share a row with any of the rectangles that are wider than binSize - k
+            if (t >= 0 && beside + other[t] > binOther) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * The dual feasible function bounds: for every pair of a function applied to the widths and a function
+     * applied to the heights, the transformed area of the rectangles cannot exceed the transformed area of the bin.
+     *
+     * @param binWidth the width of the bin
+     * @param binHeight the height of the bin
+     * @return false if the rectangles cannot fit; true otherwise
+     */
+    private boolean dualFeasibleBound(int binWidth, int binHeight) {
+        long[][] widths = transform(width, binWidth);
+        long[][] heights = transform(height, binHeight);
+
+        for (long[] f : widths) {
+            for (long[] g : heights) {
+                long area = 0;
+                for (int i = 0; i < n; i++) {
+                    area += f[i] * g[i];
+                }
+                if (area > f[n] * g[n]) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Apply the dual feasible functions to the sizes of the rectangles along one side of the bin.
+     * The functions are scaled to integers, the transformed size of the bin is kept after those of the rectangles:
+     * <ul>
+     *     <li>u(k), for k = 1, 2: the size x becomes x * k if (k + 1) * x is a multiple of the bin size,
+     *     and floor((k + 1) * x / binSize) * binSize otherwise (the bin becomes binSize * k)</li>
+     *     <li>U(e), for every size e of at most half of the bin: the sizes above binSize - e become the bin size,
+     *     the sizes below e become 0, and the other sizes are not changed</li>
+     * </ul>
+     * The identity is the last function, so that the plain area bound is combined with the other functions.
+     *
+     * @param size the size of each rectangle
+     * @param binSize the size of the bin
+     * @return the transformed sizes of the rectangles and the bin, for each function
+     */
+    private long[][] transform(int[] size, int binSize) {
+        long[][] functions = new long[n + 3][];
+        int count = 0;
+
+        for (int k = 1; k <= 2; k++) {
+            long[] f = new long[n + 1];
+            for (int i = 0; i < n; i++) {
+                f[i] = ((long) (k + 1) * size[i] % binSize == 0) ?
+                        (long) size[i] * k : (long) (k + 1) * size[i] / binSize * binSize;
+            }
+            f[n] = (long) binSize * k;
+            functions[count++] = f;
+        }
+
+        for (int e = 0; e < n; e++) {
+            if (2 * size[e] > binSize || isRepeated(size, e)) {
+                continue;
+            }
+
+            long[] f = new long[n + 1];
+            for (int i = 0; i < n; i++) {
+                f[i] = (size[i] > binSize - size[e]) ? binSize : (size[i] < size[e]) ? 0 : size[i];
+            }
+            f[n] = binSize;
+            functions[count++] = f;
+        }
+
+        long[] identity = new long[n + 1];
+        for (int i = 0; i < n; i++) {
+            identity[i] = size[i];
+        }
+        identity[n] = binSize;
+        functions[count++] = identity;
+
+        return Arrays.copyOf(functions, count);
+    }
+
+    /**
+     * Check if the size of a rectangle also belongs to one of the rectangles before it.
+     */
+    private boolean isRepeated(int[] size, int index) {
+        for (int i = 0; i < index; i++) {
+            if (size[i] == size[index]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The wasted space bound in one direction. A row of the bin holds at most one slice of each rectangle,
+     * so the number of occupied cells in a row is at most the largest subset sum of the sizes of the rectangles
+     * that fits in the row, and the total area of the rectangles has to fit in the rows with that many cells.
+     *
+     * @param size the size of the rectangles along the rows
+     * @param binSize the size of the bin along the rows
+     * @param binOther the size of the bin along the columns (the number of rows)
+     * @return false if the rectangles cannot fit; true otherwise
+     */
+    private boolean wastedSpaceBound(int[] size, int binSize, int binOther) {
+        return totalArea <= (long) binOther * largestSubsetSum(size, binSize);
+    }
+
+    /**
+     * Find the largest subset sum of the sizes that does not exceed the capacity.
+     *
+     * @param size the sizes
+     * @param capacity the capacity
+     * @return the largest subset sum
+     */
+    private static int largestSubsetSum(int[] size, int capacity) {
+        long[] reachable = subsetSums(size, capacity);
+
+        // the largest reachable sum within the capacity
+        for (int sum = capacity; sum > 0; sum--) {
+            if ((reachable[sum >>> 6] & (1L << sum)) != 0) {
+                return sum;
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Find the subset sums of the sizes up to the capacity (each size is used at most once),
+     * with a bitset of the reachable sums that is shifted by each size.
+     *
+     * @param size the sizes
+     * @param capacity the capacity
+     * @return the bitset in which the bit s is set if s is a subset sum; only the bits up to the capacity are valid
+     */
+    public static long[] subsetSums(int[] size, int capacity) {
+        long[] reachable = new long[(capacity >>> 6) + 1];
+        reachable[0] = 1;   // the empty subset
+
+        for (int s : size) {
+            if (s > capacity) {
+                continue;
+            }
+
+            // reachable |= reachable << s, from the last word down so that each size is used at most once
+            int wordShift = s >>> 6;
+            int bitShift = s & 63;
+            for (int k = reachable.length - 1; k >= wordShift; k--) {
+                long shifted = reachable[k - wordShift] << bitShift;
+                if (bitShift != 0 && k - wordShift - 1 >= 0) {
+                    shifted |= reachable[k - wordShift - 1] >>> (64 - bitShift);
+                }
+                reachable[k] |= shifted;
+            }
+        }
+
+        return reachable;
+    }
+}
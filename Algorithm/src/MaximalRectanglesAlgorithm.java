@@ -1,11 +1,15 @@
 import java.io.PrintWriter;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-
-// TODO apply rotations only when needed - currently applied whenever that is possible
-// this however will not yield a good solution (as in the 10_03 testcase)
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Implementation of the Maximal Rectangles Algorithm.
@@ -24,6 +28,8 @@ import java.util.Comparator;
  *
  * Time Complexity: Theta(n * |F|^2), where |F| represents the initial are of the bin.
  * Thus, the bigger the bin, the slower the algorithm.
+ * (in practice only one rectangle of each size class is scored at each step, so the running time
+ *  depends on the number of distinct sizes rather than on the number of rectangles)
  *
  * Space Complexity: Theta(|F|), where |F| is the free space (i.e. the initial bin)
  *
@@ -58,6 +64,20 @@ public class MaximalRectanglesAlgorithm implements Solver {
     private PrintWriter debug = new PrintWriter(System.err);
     /** DEBUGGING ONLY */
 
+    /** CONSTANTS */
+    private static final int PARALLEL_THRESHOLD = 1 << 14; // minimum work (candidates times free rectangles)
+                                                           // for which the candidates are scored in parallel:
+                                                           // a pair is scored in about 6 ns and a parallel step
+                                                           // costs about 15-30 us more, so a step of 16k pairs
+                                                           // (100 us) pays off from two cores on. With random
+                                                           // rectangles, the average step has 1.2k pairs for
+                                                           // n = 100, 18k for n = 500 and 200k for n = 2000
+    private static final int SCORING_CHUNK_SIZE = 25;      // number of rectangles scored sequentially by a task
+
+    private boolean isParallel;                         // whether the candidates are scored in parallel or not
+    private FreeRectangleHeuristic placementHeuristic;  // the heuristic used in placing rectangles into free bins
+    private PreprocessHeuristic preprocessHeuristic;    // the heuristic used in sorting the rectangles
+    private AtomicLong sharedBestArea;                  // smallest bin area found by any engine sharing it (or null)
     private boolean areRotationsAllowed;                // whether rectangles can be rotated or not
     private boolean isHeightFixed;                      // whether the enclosing rectangle has a fixed height or not
     private int binWidth;                               // the width of the enclosing rectangle
@@ -65,6 +85,13 @@ public class MaximalRectanglesAlgorithm implements Solver {
     private ArrayList<Rectangle> usedRectangles;        // list of used rectangles
     private ArrayList<Rectangle> freeRectangles;        // list of free rectangles
 
+    // edge indexes of the used rectangles (used by the contact point rule in order to
+    // only look at the edges that are collinear with the sides of a candidate position)
+    private HashMap<Integer, ArrayList<Rectangle>> leftEdges;      // used rectangles keyed by x
+    private HashMap<Integer, ArrayList<Rectangle>> rightEdges;     // used rectangles keyed by x + width
+    private HashMap<Integer, ArrayList<Rectangle>> bottomEdges;    // used rectangles keyed by y
+    private HashMap<Integer, ArrayList<Rectangle>> topEdges;       // used rectangles keyed by y + height
+
     /**
      * List of heuristics to be used when choosing what free rectangle to currently fill.
      */
@@ -94,6 +121,34 @@ public class MaximalRectanglesAlgorithm implements Solver {
 
     @Override
     public Rectangle[] solver(Rectangle[] rectangles) {
+        // solve the instance with the common divisors of the dimensions divided out (if there are any),
+        // the bins then grow by a multiple of the divisors at each step
+        DimensionScaling scaling = new DimensionScaling(rectangles, areRotationsAllowed, isHeightFixed ? binHeight : 0);
+        if (scaling.isIdentity()) {
+            return solver(rectangles, scaling);
+        }
+
+        if (isHeightFixed) {
+            binHeight = scaling.getHeight();
+        }
+        Rectangle[] placement = solver(scaling.scaleDown(rectangles), scaling);
+
+        // the enclosing rectangle is scaled back up as well
+        binWidth = scaling.scaleUpWidth(binWidth);
+        binHeight = scaling.scaleUpHeight(binHeight);
+
+        return (placement == null) ? null : scaling.scaleUp(placement);
+    }
+
+    /**
+     * Solve the (scaled) instance.
+     *
+     * @param rectangles the given array of rectangles
+     * @param scaling the scaling of the instance, used to compare the bins with the ones of the other engines
+     * @return an array in which the rectangles have updated (x, y) coordinates; null if another engine
+     *          found a smaller bin first
+     */
+    private Rectangle[] solver(Rectangle[] rectangles, DimensionScaling scaling) {
         // the initial values of the bin
         int width = binWidth, height = binHeight;
 
@@ -111,41 +166,105 @@ public class MaximalRectanglesAlgorithm implements Solver {
             }
         }
 
-        width = startValue;
-        if (!this.isHeightFixed) {
-            height = startValue;
+        // the rectangles cannot fit in a bin whose area is smaller than their total area,
+        // so skip those bins (the bins are tried in order of increasing area)
+        long totalArea = 0;
+        for (int i = 0; i < rectangles.length; i++) {
+            totalArea += (long) rectangles[i].width * (long) rectangles[i].height;
+        }
+
+        if (this.isHeightFixed) {
+            width = (int) Math.max(startValue, (totalArea + height - 1) / height);
+        } else {
+            // a square bin only fits a long rectangle once its side is as long as the rectangle
+            // (e.g. 32x1 in 10_03_hf_ry), so if there is one, the bin starts as wide as the longest side
+            // that has to lie across it and only as tall as the area requires
+            int longest = 0;        // the longest side that the width has to hold
+            int tallest = 0;        // the longest side that the height has to hold
+            for (int i = 0; i < rectangles.length; i++) {
+                if (areRotationsAllowed) {
+                    longest = Math.max(longest, Math.max(rectangles[i].width, rectangles[i].height));
+                    tallest = Math.max(tallest, Math.min(rectangles[i].width, rectangles[i].height));
+                } else {
+                    longest = Math.max(longest, rectangles[i].width);
+                    tallest = Math.max(tallest, rectangles[i].height);
+                }
+            }
+
+            width = (int) Math.max(startValue, (long) Math.sqrt((double) totalArea));
+            height = width;
+            if (longest > width) {
+                width = longest;
+                height = (int) Math.max(tallest, (totalArea + width - 1) / width);
+            }
         }
 
         ArrayList<Rectangle> arr = new ArrayList<>();
         arr.addAll(Arrays.asList(rectangles));
 
         // do some pre-processing
-        preprocess(arr, PreprocessHeuristic.DESCSS);
+        preprocess(arr, preprocessHeuristic);
 
-        // each iteration only one of: width, height will be updated
-        boolean turn = true;
+        int step = 0;
 
         // try bins until we find one in which all the rectangles fit
         do {
-            if (this.isHeightFixed) { // only increase the width if the height is fixed
-                init(width, height);
-
-                width++;
-            } else { // increase width and height alternatively if the height is free
-                init(width, height);
-
-                if (turn) width++;
-                else height++;
+            initStep(width, height, step);
+            step++;
 
-                turn = !turn;
+            // the bins only get bigger, so stop as soon as another engine found a smaller one
+            if (sharedBestArea != null && area(scaling) > sharedBestArea.get()) {
+                return null;
             }
-        } while ((orderedRectangles = insertRectangles(new ArrayList<>(arr),
-                FreeRectangleHeuristic.BestAreaFit)) == null);
+        } while ((orderedRectangles = insertRectangles(new ArrayList<>(arr), placementHeuristic)) == null);
+
+        if (sharedBestArea != null) {
+            sharedBestArea.accumulateAndGet(area(scaling), Math::min);
+        }
 
         return orderedRectangles;
     }
 
+    /**
+     * Compute the area of the current bin, in the dimensions of the original instance.
+     *
+     * @param scaling the scaling of the instance
+     * @return the area of the bin
+     */
+    private long area(DimensionScaling scaling) {
+        return (long) scaling.scaleUpWidth(binWidth) * (long) scaling.scaleUpHeight(binHeight);
+    }
+
     public MaximalRectanglesAlgorithm(boolean areRotationsAllowed, int fixedHeight) {
+        this(areRotationsAllowed, fixedHeight, false);
+    }
+
+    /**
+     * Constructor that can enable the parallel scoring of the candidates.
+     * The scoring only runs in parallel if the fork-join pool has more than one thread and the work of a step
+     * (the number of candidates times the number of free rectangles that each of them is scored against) is at least
+     * {@code PARALLEL_THRESHOLD}, since smaller steps are faster when they are scored serially. Only one rectangle
+     * of each size class is a candidate, so this depends on the number of distinct sizes: most steps of an instance
+     * of 500 or more rectangles of different sizes are scored in parallel, and none of one of 100 rectangles.
+     */
+    public MaximalRectanglesAlgorithm(boolean areRotationsAllowed, int fixedHeight, boolean isParallel) {
+        this(areRotationsAllowed, fixedHeight, FreeRectangleHeuristic.BestAreaFit, PreprocessHeuristic.DESCSS, null);
+        this.isParallel = isParallel;
+    }
+
+    /**
+     * Constructor with the heuristics to be used.
+     *
+     * If a shared area is given, the engine gives up (and the solver returns null) as soon as the bin
+     * it tries is bigger than the area stored in it. The area of the bin found by the engine is stored in it
+     * on success, so that engines running concurrently on the same input can tighten each other's search.
+     */
+    public MaximalRectanglesAlgorithm(boolean areRotationsAllowed, int fixedHeight,
+                                      FreeRectangleHeuristic placementHeuristic,
+                                      PreprocessHeuristic preprocessHeuristic, AtomicLong sharedBestArea) {
+        this.placementHeuristic = placementHeuristic;
+        this.preprocessHeuristic = preprocessHeuristic;
+        this.sharedBestArea = sharedBestArea;
         this.binWidth = 0;
         this.binHeight = 0;
 
@@ -157,6 +276,23 @@ public class MaximalRectanglesAlgorithm implements Solver {
         }
     }
 
+    /**
+     * Initialize the bin that is tried after the given number of steps.
+     * Each step increases the width if the height is fixed, and the width and the height
+     * alternatively otherwise.
+     *
+     * @param width the initial width of the bin
+     * @param height the initial height of the bin
+     * @param step the number of steps
+     */
+    private void initStep(int width, int height, int step) {
+        if (this.isHeightFixed) {
+            init(width + step, height);
+        } else {
+            init(width + (step + 1) / 2, height + step / 2);
+        }
+    }
+
     /**
      * Initialization of instance variables and of the width and height of the bin.
      *
@@ -177,6 +313,11 @@ public class MaximalRectanglesAlgorithm implements Solver {
         usedRectangles = new ArrayList<>();
         freeRectangles = new ArrayList<>();
         freeRectangles.add(enclosingRect);
+
+        leftEdges = new HashMap<>();
+        rightEdges = new HashMap<>();
+        bottomEdges = new HashMap<>();
+        topEdges = new HashMap<>();
     }
 
     /**
@@ -257,64 +398,63 @@ public class MaximalRectanglesAlgorithm implements Solver {
     private Rectangle[] insertRectangles(ArrayList<Rectangle> rectangles, FreeRectangleHeuristic heuristic) {
         ArrayList<Rectangle> orderedRectangles = new ArrayList<>();
 
-        while (rectangles.size() > 0) {
-            int bestScore1 = Integer.MAX_VALUE;
-            int bestScore2 = Integer.MAX_VALUE;
-            int bestRectIndex = -1;
-            Rectangle bestRect = null;
-
-            // choose the best rectangle to currently place into an empty bin
-            // i.e. try to maximise the placement of the next rectangle
-            // by choosing the best rectangle to place
-            for (int i = 0; i < rectangles.size(); i++) {
-                RectangleAndScoreReturn ret = null;
+        // rectangles with the same dimensions get the same scores and the first one of them wins the ties,
+        // so only the first remaining rectangle of each size class has to be scored
+        HashMap<Long, ArrayDeque<Integer>> sizeClasses = new HashMap<>();
+        for (int i = 0; i < rectangles.size(); i++) {
+            long size = ((long) rectangles.get(i).width << 32) | rectangles.get(i).height;
+            ArrayDeque<Integer> sizeClass = sizeClasses.get(size);
+            if (sizeClass == null) {
+                sizeClass = new ArrayDeque<>();
+                sizeClasses.put(size, sizeClass);
+            }
+            sizeClass.add(i);
+        }
 
-                switch (heuristic) {
-                    case BestShortSideFit:
-                        ret = FindPositionBestShortSideFit(rectangles.get(i));
-                        break;
-                    case BestLongSideFit:
-                        ret = FindPositionBestLongSideFit(rectangles.get(i));
-                        break;
-                    case BestAreaFit:
-                        ret = FindPositionBestAreaFit(rectangles.get(i));
-                        break;
-                    case BottomLeftRule:
-                        ret = FindPositionBottomLeftRule(rectangles.get(i));
-                        break;
-                    case ContactPointRule:
-                        ret = FindPositionContactPointRule(rectangles.get(i));
-                        break;
-                }
+        // the size classes keyed by the position of their first remaining rectangle
+        TreeMap<Integer, ArrayDeque<Integer>> classesByFirst = new TreeMap<>();
+        for (ArrayDeque<Integer> sizeClass : sizeClasses.values()) {
+            classesByFirst.put(sizeClass.peek(), sizeClass);
+        }
 
-                if (heuristic.equals(FreeRectangleHeuristic.ContactPointRule)) { // bigger is better in this case
-                    ret.score1 = -ret.score1;
-                }
+        ArrayList<Rectangle> candidates = new ArrayList<>();
+        ArrayList<ArrayDeque<Integer>> candidateClasses = new ArrayList<>();
 
-                // cannot fit the new rectangle
-                if (ret.rectangle.height == 0) {
-                    ret.score1 = Integer.MAX_VALUE;
-                    ret.score2 = Integer.MAX_VALUE;
-                    return null;
-                }
+        while (classesByFirst.size() > 0) {
+            // score the first remaining rectangle of each size class
+            candidates.clear();
+            candidateClasses.clear();
+            for (Map.Entry<Integer, ArrayDeque<Integer>> entry : classesByFirst.entrySet()) {
+                candidates.add(rectangles.get(entry.getKey()));
+                candidateClasses.add(entry.getValue());
+            }
 
-                // can fit the current rectangle
-                if (ret.score1 < bestScore1 || (ret.score1 == bestScore1 && ret.score2 < bestScore2)) {
-                    bestScore1 = ret.score1;
-                    bestScore2 = ret.score2;
-                    bestRect = ret.rectangle;
-                    bestRectIndex = i;
-                }
+            // choose the best rectangle to currently place into an empty bin
+            // i.e. try to maximise the placement of the next rectangle
+            // by choosing the best rectangle to place
+            RectangleAndScoreReturn best;
+            if (isParallel && ForkJoinPool.getCommonPoolParallelism() > 1
+                    && (long) candidates.size() * freeRectangles.size() >= PARALLEL_THRESHOLD) {
+                best = ForkJoinPool.commonPool().invoke(new ScoringTask(candidates, heuristic, 0, candidates.size()));
+            } else {
+                best = scoreRectangles(candidates, heuristic, 0, candidates.size());
             }
 
-            if (bestRectIndex == -1) {
+            // cannot fit one of the rectangles
+            if (best == null || best.index == -1) {
                 return null;
             }
 
             // place the current rectangle
-            PlaceRectangle(bestRect);
-            orderedRectangles.add(bestRect);
-            rectangles.remove(bestRectIndex);
+            PlaceRectangle(best.rectangle);
+            orderedRectangles.add(best.rectangle);
+
+            // the next rectangle of the size class (if any) becomes its first one
+            ArrayDeque<Integer> sizeClass = candidateClasses.get(best.index);
+            classesByFirst.remove(sizeClass.poll());
+            if (!sizeClass.isEmpty()) {
+                classesByFirst.put(sizeClass.peek(), sizeClass);
+            }
         }
 
         Rectangle[] answer = new Rectangle[orderedRectangles.size()];
@@ -325,6 +465,117 @@ public class MaximalRectanglesAlgorithm implements Solver {
         return answer;
     }
 
+    /**
+     * Score the rectangles in the range [from, to) of the given list and choose the best one.
+     * Ties are broken in favour of the rectangle that comes first in the list.
+     *
+     * @param rectangles the list of rectangles that still have to be placed
+     * @param heuristic the heuristic used in placing rectangles into free bins
+     * @param from the first position in the list (inclusive)
+     * @param to the last position in the list (exclusive)
+     * @return the best placement along with its scores and its position in the list (-1 if there is none);
+     *          null if one of the rectangles in the range cannot fit
+     */
+    private RectangleAndScoreReturn scoreRectangles(ArrayList<Rectangle> rectangles,
+                                                    FreeRectangleHeuristic heuristic, int from, int to) {
+        RectangleAndScoreReturn best = new RectangleAndScoreReturn();
+
+        for (int i = from; i < to; i++) {
+            RectangleAndScoreReturn ret = null;
+
+            switch (heuristic) {
+                case BestShortSideFit:
+                    ret = FindPositionBestShortSideFit(rectangles.get(i));
+                    break;
+                case BestLongSideFit:
+                    ret = FindPositionBestLongSideFit(rectangles.get(i));
+                    break;
+                case BestAreaFit:
+                    ret = FindPositionBestAreaFit(rectangles.get(i));
+                    break;
+                case BottomLeftRule:
+                    ret = FindPositionBottomLeftRule(rectangles.get(i));
+                    break;
+                case ContactPointRule:
+                    ret = FindPositionContactPointRule(rectangles.get(i));
+                    break;
+            }
+
+            if (heuristic.equals(FreeRectangleHeuristic.ContactPointRule)) { // bigger is better in this case
+                ret.score1 = -ret.score1;
+            }
+
+            // cannot fit the new rectangle
+            if (ret.rectangle.height == 0) {
+                return null;
+            }
+
+            // can fit the current rectangle
+            ret.index = i;
+            best = better(best, ret);
+        }
+
+        return best;
+    }
+
+    /**
+     * Choose the better of two scored placements.
+     * The first one is kept unless the second one has strictly better scores.
+     *
+     * @param first the first scored placement
+     * @param second the second scored placement
+     * @return the better scored placement
+     */
+    private RectangleAndScoreReturn better(RectangleAndScoreReturn first, RectangleAndScoreReturn second) {
+        if (second.score1 < first.score1 || (second.score1 == first.score1 && second.score2 < first.score2)) {
+            return second;
+        }
+
+        return first;
+    }
+
+    /**
+     * Task that scores a range of the remaining rectangles in a fork-join pool.
+     * The free rectangles and the used rectangles are only read while scoring.
+     */
+    private class ScoringTask extends RecursiveTask<RectangleAndScoreReturn> {
+        private static final long serialVersionUID = 1L;
+
+        private ArrayList<Rectangle> rectangles;
+        private FreeRectangleHeuristic heuristic;
+        private int from;
+        private int to;
+
+        public ScoringTask(ArrayList<Rectangle> rectangles, FreeRectangleHeuristic heuristic, int from, int to) {
+            this.rectangles = rectangles;
+            this.heuristic = heuristic;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected RectangleAndScoreReturn compute() {
+            if (to - from <= SCORING_CHUNK_SIZE) {
+                return scoreRectangles(rectangles, heuristic, from, to);
+            }
+
+            int middle = (from + to) / 2;
+            ScoringTask left = new ScoringTask(rectangles, heuristic, from, middle);
+            ScoringTask right = new ScoringTask(rectangles, heuristic, middle, to);
+
+            right.fork();
+            RectangleAndScoreReturn leftBest = left.compute();
+            RectangleAndScoreReturn rightBest = right.join();
+
+            // the rectangles in the left half come first in the list, so they win the ties
+            if (leftBest == null || rightBest == null) {
+                return null;
+            }
+
+            return better(leftBest, rightBest);
+        }
+    }
+
     /**
      * Place the current rectangle in a free space.
      *
@@ -341,8 +592,30 @@ public class MaximalRectanglesAlgorithm implements Solver {
             }
         }
 
-        pruneFreeRectanglesList();
+        // the free rectangles that were not split come first, followed by the new ones
+        pruneFreeRectanglesList(limit);
         usedRectangles.add(rectangle);
+
+        addEdge(leftEdges, rectangle.x, rectangle);
+        addEdge(rightEdges, rectangle.x + rectangle.width, rectangle);
+        addEdge(bottomEdges, rectangle.y, rectangle);
+        addEdge(topEdges, rectangle.y + rectangle.height, rectangle);
+    }
+
+    /**
+     * Add a used rectangle to the bucket of the given edge index that corresponds to the given coordinate.
+     *
+     * @param edges the edge index
+     * @param coordinate the coordinate of the edge
+     * @param rectangle the used rectangle
+     */
+    private void addEdge(HashMap<Integer, ArrayList<Rectangle>> edges, int coordinate, Rectangle rectangle) {
+        ArrayList<Rectangle> bucket = edges.get(coordinate);
+        if (bucket == null) {
+            bucket = new ArrayList<>();
+            edges.put(coordinate, bucket);
+        }
+        bucket.add(rectangle);
     }
 
     /**
@@ -419,13 +692,21 @@ public class MaximalRectanglesAlgorithm implements Solver {
     /**
      * Make the space occupied by the free rectangles disjoint.
      * i.e. no two rectangles can share space on the plane.
+     *
+     * The free rectangles before {@code firstNew} were already pruned, so none of them is contained in another one
+     * and only the pairs that contain at least one new free rectangle have to be checked.
+     *
+     * @param firstNew the position of the first free rectangle that was added by the last split
      */
-    private void pruneFreeRectanglesList() {
+    private void pruneFreeRectanglesList(int firstNew) {
         for (int i = 0; i < freeRectangles.size(); i++) {
-            for (int j = i + 1; j < freeRectangles.size(); j++) {
+            for (int j = Math.max(i + 1, firstNew); j < freeRectangles.size(); j++) {
                 if (isContainedIn(freeRectangles.get(i), freeRectangles.get(j))) {
                     // i is contained in j
                     freeRectangles.remove(i);
+                    if (i < firstNew) {
+                        firstNew--;
+                    }
                     i--;
                     break;
                 }
@@ -797,23 +1078,56 @@ public class MaximalRectanglesAlgorithm implements Solver {
             score += width;
         }
 
-        for (int i = 0; i < usedRectangles.size(); i++) {
-            if (usedRectangles.get(i).x == x + width || usedRectangles.get(i).x + usedRectangles.get(i).width == x) {
-                score += CommonIntervalLength(usedRectangles.get(i).y,
-                        usedRectangles.get(i).y + usedRectangles.get(i).height,
-                        y,
-                        y + height);
-            }
+        // only the used rectangles with an edge collinear to one of the sides can touch the rectangle
+        // (a used rectangle cannot be both to the left and to the right of it, so no contact is counted twice)
+        score += VerticalContact(leftEdges.get(x + width), y, y + height);
+        score += VerticalContact(rightEdges.get(x), y, y + height);
+        score += HorizontalContact(bottomEdges.get(y + height), x, x + width);
+        score += HorizontalContact(topEdges.get(y), x, x + width);
 
-            if (usedRectangles.get(i).y == y + height || usedRectangles.get(i).y + usedRectangles.get(i).height == y) {
-                score += CommonIntervalLength(usedRectangles.get(i).x,
-                        usedRectangles.get(i).x + usedRectangles.get(i).width,
-                        x,
-                        x + width);
-            }
+        return score;
+    }
+
+    /**
+     * Compute the contact along a vertical side of a rectangle.
+     *
+     * @param bucket the used rectangles that have an edge on the line of the side (can be null)
+     * @param start the start of the side (y-coordinate)
+     * @param end the end of the side (y-coordinate)
+     * @return the length of the side that touches the used rectangles
+     */
+    private int VerticalContact(ArrayList<Rectangle> bucket, int start, int end) {
+        if (bucket == null) {
+            return 0;
         }
 
-        return score;
+        int contact = 0;
+        for (int i = 0; i < bucket.size(); i++) {
+            contact += CommonIntervalLength(bucket.get(i).y, bucket.get(i).y + bucket.get(i).height, start, end);
+        }
+
+        return contact;
+    }
+
+    /**
+     * Compute the contact along a horizontal side of a rectangle.
+     *
+     * @param bucket the used rectangles that have an edge on the line of the side (can be null)
+     * @param start the start of the side (x-coordinate)
+     * @param end the end of the side (x-coordinate)
+     * @return the length of the side that touches the used rectangles
+     */
+    private int HorizontalContact(ArrayList<Rectangle> bucket, int start, int end) {
+        if (bucket == null) {
+            return 0;
+        }
+
+        int contact = 0;
+        for (int i = 0; i < bucket.size(); i++) {
+            contact += CommonIntervalLength(bucket.get(i).x, bucket.get(i).x + bucket.get(i).width, start, end);
+        }
+
+        return contact;
     }
 
     /**
@@ -848,11 +1162,13 @@ public class MaximalRectanglesAlgorithm implements Solver {
         public Rectangle rectangle;
         public int score1;
         public int score2;
+        public int index;       // position of the rectangle in the list of remaining rectangles
 
         public RectangleAndScoreReturn() {
             this.rectangle = null;
             this.score1 = Integer.MAX_VALUE;
             this.score2 = Integer.MAX_VALUE;
+            this.index = -1;
         }
     }
 
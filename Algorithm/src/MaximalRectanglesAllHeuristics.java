@@ -0,0 +1,97 @@
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An improvement to the Maximal Rectangles Algorithm
+ * that runs multiple instances of MaximalRectanglesAlgorithm concurrently,
+ * one for each combination of placement heuristic and pre-processing heuristic,
+ * and picks the one with the smallest enclosing rectangle.
+ *
+ * The instances share the smallest bin area found so far, so that an instance
+ * stops as soon as it can no longer beat the best one.
+ *
+ * A single engine already takes seconds on thousands of rectangles, so above {@code GRID_LIMIT} rectangles
+ * only the default combination (best area fit, DESCSS) is run instead of the grid.
+ */
+public class MaximalRectanglesAllHeuristics implements Solver {
+    /** CONSTANTS */
+    private static final int GRID_LIMIT = 1000;    // the largest number of rectangles for which the grid is run
+
+    private boolean rotations;                                                  // if rotations are allowed
+    private int fixedHeight;                                                    // the fixed height
+    private MaximalRectanglesAlgorithm.FreeRectangleHeuristic[] placementHeuristics;    // the placement heuristics
+    private MaximalRectanglesAlgorithm.PreprocessHeuristic[] preprocessHeuristics;      // the sorting heuristics
+    private Rectangle enclosingRectangle;                                       // the best enclosing rectangle
+
+    @Override
+    public Rectangle[] solver(Rectangle[] rectangles) {
+        AtomicLong bestArea = new AtomicLong(Long.MAX_VALUE);
+
+        // run every combination of heuristics on its own engine
+        ArrayList<MaximalRectanglesAlgorithm> engines = new ArrayList<>();
+        ArrayList<ForkJoinTask<Rectangle[]>> placements = new ArrayList<>();
+
+        MaximalRectanglesAlgorithm.FreeRectangleHeuristic[] placementHeuristics = this.placementHeuristics;
+        MaximalRectanglesAlgorithm.PreprocessHeuristic[] preprocessHeuristics = this.preprocessHeuristics;
+        if (rectangles.length > GRID_LIMIT) {
+            placementHeuristics = new MaximalRectanglesAlgorithm.FreeRectangleHeuristic[] {
+                    MaximalRectanglesAlgorithm.FreeRectangleHeuristic.BestAreaFit };
+            preprocessHeuristics = new MaximalRectanglesAlgorithm.PreprocessHeuristic[] {
+                    MaximalRectanglesAlgorithm.PreprocessHeuristic.DESCSS };
+        }
+
+        for (MaximalRectanglesAlgorithm.FreeRectangleHeuristic placementHeuristic : placementHeuristics) {
+            for (MaximalRectanglesAlgorithm.PreprocessHeuristic preprocessHeuristic : preprocessHeuristics) {
+                MaximalRectanglesAlgorithm engine = new MaximalRectanglesAlgorithm(
+                        this.rotations, this.fixedHeight, placementHeuristic, preprocessHeuristic, bestArea);
+                engines.add(engine);
+                placements.add(ForkJoinPool.commonPool().submit(() -> engine.solver(rectangles)));
+            }
+        }
+
+        // return the best placement (the first one in the grid in case of ties)
+        Rectangle[] bestPlacement = null;
+        long bestPlacementArea = Long.MAX_VALUE;
+
+        for (int i = 0; i < engines.size(); i++) {
+            Rectangle[] placement = placements.get(i).join();
+            if (placement == null) { // the engine gave up since another one found a smaller bin
+                continue;
+            }
+
+            Rectangle enclosing = engines.get(i).getEnclosingRectangle();
+            long area = (long) enclosing.width * (long) enclosing.height;
+            if (area < bestPlacementArea) {
+                bestPlacement = placement;
+                bestPlacementArea = area;
+                enclosingRectangle = enclosing;
+            }
+        }
+
+        return bestPlacement;
+    }
+
+    /**
+     * Constructor that uses the whole grid of heuristics.
+     */
+    public MaximalRectanglesAllHeuristics(boolean rotations, int fixedHeight) {
+        this(rotations, fixedHeight, MaximalRectanglesAlgorithm.FreeRectangleHeuristic.values(),
+                MaximalRectanglesAlgorithm.PreprocessHeuristic.values());
+    }
+
+    /**
+     * Constructor that only uses the given subset of the heuristics.
+     */
+    public MaximalRectanglesAllHeuristics(boolean rotations, int fixedHeight,
+                                          MaximalRectanglesAlgorithm.FreeRectangleHeuristic[] placementHeuristics,
+                                          MaximalRectanglesAlgorithm.PreprocessHeuristic[] preprocessHeuristics) {
+        this.rotations = rotations;
+        this.fixedHeight = fixedHeight;
+        this.placementHeuristics = placementHeuristics;
+        this.preprocessHeuristics = preprocessHeuristics;
+    }
+
+    public Rectangle getEnclosingRectangle() { return enclosingRectangle; }
+}
@@ -0,0 +1,318 @@
+/**
+ * Occupancy grid of an enclosing bin, used by the exact solver to keep track of the occupied cells.
+ *
+ * Each row of the bin is kept as a bitboard (an array of 64-bit words, one bit per cell),
+ * so the grid is sized to the bin: it takes width * height / 8 bytes and clearing it
+ * only touches width * height / 64 words. Rectangles are checked, placed and cleared
+ * with word-wide operations instead of cell by cell.
+ *
+ * The grid also keeps a histogram of the blocks of free cells in the rows, which is updated
+ * incrementally by each fill and clear (only in the rows of the rectangle), so that it does not
+ * have to be rebuilt by scanning the whole bin.
+ *
+ * Finally, the grid keeps a Zobrist-style hash of the occupied cells: the XOR of a mixed value
+ * of every word with its position. It is updated with the words that change in each fill and clear,
+ * so that equal occupancy shapes (reached in any order) can be recognized without comparing the cells.
+ *
+ * The rows use the array coordinates: the row y = 0 is the top of the bin.
+ */
+public class OccupancyGrid {
+    private int width;          // the width of the bin
+    private int height;         // the height of the bin
+    private int words;          // the number of words in each row
+    private long[] cells;       // the bitboards of the rows, one after the other
+    private int[] freeRuns;     // the number of free cells in blocks of width w + 1, for each w
+    private long hash;          // the hash of the occupied cells (0 for an empty grid)
+
+    /**
+     * Create an empty grid for a bin of the given dimensions.
+     *
+     * @param width the width of the bin
+     * @param height the height of the bin
+     */
+    public OccupancyGrid(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.words = (width + 63) >>> 6;
+        this.cells = new long[words * height];
+
+        // every row is a single block of free cells
+        this.freeRuns = new int[width];
+        this.freeRuns[width - 1] = width * height;
+    }
+
+    /**
+     * Create a copy of the given grid.
+     *
+     * @param other the grid to be copied
+     */
+    public OccupancyGrid(OccupancyGrid other) {
+        this.width = other.width;
+        this.height = other.height;
+        this.words = other.words;
+        this.cells = other.cells.clone();
+        this.freeRuns = other.freeRuns.clone();
+        this.hash = other.hash;
+    }
+
+    /**
+     * Check if the cell at (x, y) is occupied.
+     *
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return true if the cell is occupied; false otherwise
+     */
+    public boolean isOccupied(int x, int y) {
+        return (cells[y * words + (x >>> 6)] & (1L << x)) != 0;
+    }
+
+    /**
+     * Check if all the cells of the rectangle with its top left corner at (x, y) are free.
+     * Each row is checked a word (64 cells) at a time.
+     *
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @param rectangleWidth the width of the rectangle
+     * @param rectangleHeight the height of the rectangle
+     * @return true if the rectangle does not overlap any occupied cell; false otherwise
+     */
+    public boolean isFree(int x, int y, int rectangleWidth, int rectangleHeight) {
+        int first = x >>> 6;                            // the first word of the span
+        int last = (x + rectangleWidth - 1) >>> 6;      // the last word of the span
+        long firstMask = -1L << x;                      // the cells of the first word from x onwards
+        long lastMask = -1L >>> -(x + rectangleWidth);  // the cells of the last word up to the end of the span
+
+        for (int i = y; i < y + rectangleHeight; i++) {
+            int row = i * words;
+            if (first == last) {
+                if ((cells[row + first] & firstMask & lastMask) != 0) {
+                    return false;
+                }
+                continue;
+            }
+
+            if ((cells[row + first] & firstMask) != 0 || (cells[row + last] & lastMask) != 0) {
+                return false;
+            }
+            for (int k = first + 1; k < last; k++) {
+                if (cells[row + k] != 0) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Find the first free cell in row y, starting from the cell at (x, y).
+     *
+     * @param x the x coordinate to start from
+     * @param y the y coordinate
+     * @return the x coordinate of the first free cell; the width of the bin if there is none
+     */
+    public int nextFree(int x, int y) {
+        return next(x, y, -1L);
+    }
+
+    /**
+     * Find the first occupied cell in row y, starting from the cell at (x, y).
+     *
+     * @param x the x coordinate to start from
+     * @param y the y coordinate
+     * @return the x coordinate of the first occupied cell; the width of the bin if there is none
+     */
+    public int nextOccupied(int x, int y) {
+        return next(x, y, 0L);
+    }
+
+    /**
+     * Find the last occupied cell in row y before the cell at (x, y).
+     *
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @return the x coordinate of the last occupied cell before x; -1 if there is none
+     */
+    public int previousOccupied(int x, int y) {
+        if (x == 0) {
+            return -1;
+        }
+
+        int row = y * words;
+        int k = (x - 1) >>> 6;
+        long bits = cells[row + k] & (-1L >>> -x);
+        while (bits == 0) {
+            if (--k < 0) {
+                return -1;
+            }
+            bits = cells[row + k];
+        }
+
+        return (k << 6) + 63 - Long.numberOfLeadingZeros(bits);
+    }
+
+    /**
+     * Find the first cell in row y, starting from the cell at (x, y), whose bit differs from the given pattern.
+     * The words are scanned one at a time and the cell is found with the number of trailing zeros.
+     *
+     * @param x the x coordinate to start from
+     * @param y the y coordinate
+     * @param pattern -1 to skip the occupied cells; 0 to skip the free cells
+     * @return the x coordinate of the cell; the width of the bin if there is none
+     */
+    private int next(int x, int y, long pattern) {
+        if (x >= width) {
+            return width;
+        }
+
+        int row = y * words;
+        int k = x >>> 6;
+        long bits = (cells[row + k] ^ pattern) & (-1L << x);
+        while (bits == 0) {
+            if (++k == words) {
+                return width;
+            }
+            bits = cells[row + k] ^ pattern;
+        }
+
+        // the unused cells at the end of the last word are free, so do not go past the width
+        return Math.min(width, (k << 6) + Long.numberOfTrailingZeros(bits));
+    }
+
+    /**
+     * Mark the cells of the rectangle with its top left corner at (x, y) as occupied.
+     *
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @param rectangleWidth the width of the rectangle
+     * @param rectangleHeight the height of the rectangle
+     */
+    public void fill(int x, int y, int rectangleWidth, int rectangleHeight) {
+        updateFreeRuns(x, y, rectangleWidth, rectangleHeight, -1);
+        update(x, y, rectangleWidth, rectangleHeight, true);
+    }
+
+    /**
+     * Mark the cells of the rectangle with its top left corner at (x, y) as free.
+     *
+     * @param x the x coordinate
+     * @param y the y coordinate
+     * @param rectangleWidth the width of the rectangle
+     * @param rectangleHeight the height of the rectangle
+     */
+    public void clear(int x, int y, int rectangleWidth, int rectangleHeight) {
+        updateFreeRuns(x, y, rectangleWidth, rectangleHeight, 1);
+        update(x, y, rectangleWidth, rectangleHeight, false);
+    }
+
+    /**
+     * Update the histogram of the blocks of free cells in the rows of a rectangle, before it is placed or cleared.
+     * The blocks on the left and on the right of the rectangle are merged with it when it is cleared,
+     * and they are split again when it is placed.
+     *
+     * @param sign -1 if the rectangle is placed; 1 if it is cleared
+     */
+    private void updateFreeRuns(int x, int y, int rectangleWidth, int rectangleHeight, int sign) {
+        int right = x + rectangleWidth;
+
+        if (words == 1) {
+            // the common case for the exact solver: each row fits in a single word,
+            // so the blocks on both sides of the rectangle are found with a single load per row
+            long before = ~(-1L << x);                      // the cells before the rectangle
+            long after = (right < 64) ? -1L << right : 0;   // the cells after the rectangle
+            for (int i = y; i < y + rectangleHeight; i++) {
+                long bits = cells[i];
+                int start = 64 - Long.numberOfLeadingZeros(bits & before);
+                int end = Math.min(width, Long.numberOfTrailingZeros(bits & after));
+
+                addFreeRun(end - start, sign);
+                addFreeRun(x - start, -sign);
+                addFreeRun(end - right, -sign);
+            }
+            return;
+        }
+
+        for (int i = y; i < y + rectangleHeight; i++) {
+            int start = previousOccupied(x, i) + 1;
+            int end = nextOccupied(right, i);
+
+            addFreeRun(end - start, sign);
+            addFreeRun(x - start, -sign);
+            addFreeRun(end - right, -sign);
+        }
+    }
+
+    /**
+     * Set or reset the cells of a rectangle, a word (64 cells) at a time, and update the hash.
+     */
+    private void update(int x, int y, int rectangleWidth, int rectangleHeight, boolean occupied) {
+        int first = x >>> 6;
+        int last = (x + rectangleWidth - 1) >>> 6;
+
+        for (int i = y; i < y + rectangleHeight; i++) {
+            int row = i * words;
+            for (int k = first; k <= last; k++) {
+                long mask = -1L;
+                if (k == first) {
+                    mask &= -1L << x;
+                }
+                if (k == last) {
+                    mask &= -1L >>> -(x + rectangleWidth);
+                }
+
+                long before = cells[row + k];
+                long after = occupied ? (before | mask) : (before & ~mask);
+                cells[row + k] = after;
+
+                // replace the contribution of the word to the hash
+                hash ^= mix(before, row + k) ^ mix(after, row + k);
+            }
+        }
+    }
+
+    /**
+     * Add or remove a block of free cells of the given width to the histogram.
+     *
+     * @param runWidth the width of the block (nothing happens for an empty block)
+     * @param sign 1 to add the block; -1 to remove it
+     */
+    private void addFreeRun(int runWidth, int sign) {
+        if (runWidth > 0) {
+            freeRuns[runWidth - 1] += sign * runWidth;
+        }
+    }
+
+    /**
+     * Get the histogram of the blocks of free cells: the entry w is the number of free cells
+     * that are in blocks of width w + 1. The returned array must not be modified.
+     *
+     * @return the histogram
+     */
+    public int[] getFreeRuns() { return freeRuns; }
+
+    /**
+     * Get the hash of the occupied cells. Grids with the same occupied cells have the same hash,
+     * regardless of the order in which the rectangles were placed.
+     *
+     * @return the hash
+     */
+    public long getHash() { return hash; }
+
+    /**
+     * Mix a value with a position into a well distributed 64-bit hash (the finalizer of SplitMix64).
+     *
+     * @param value the value
+     * @param position the position of the value
+     * @return the hash
+     */
+    public static long mix(long value, long position) {
+        long z = value + position * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    public int getWidth() { return width; }
+
+    public int getHeight() { return height; }
+}
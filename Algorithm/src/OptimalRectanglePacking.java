@@ -1,97 +1,455 @@
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class OptimalRectanglePacking implements Solver {
-    private final static int PLACEMENT_MATRIX_SIZE = 10000;
-
     private boolean solution;                       // true if anytime; false if iterative
     private boolean rotationsAllowed;
 
     private int fixedHeight;                        // 0 if height is free; value of the fixed height otherwise
 
-    private int[][] placementMatrix;                // matrix that holds the positions of rectangles
+    private OccupancyGrid grid;                     // the occupied cells of the current enclosing bin
     private int[] histogram;                        // array that will hold the histogram for pruning
 
-    private HashMap<Integer, Integer> mapWidth;     // map each rectangle to its width using its index as the key
+    private int[] remainingArea;                    // the total area of the rectangles from each index onwards
+    private int[] remainingWidth;                   // the smallest width of the rectangles from each index onwards
+
+    private int[] previousIdentical;                // the previous rectangle with the same dimensions; -1 if none
+    private int mirrored;                           // the rectangle kept in the bottom left quadrant; -1 if none
+
+    private BitSet[] normalColumns;                 // the x coordinates that are tried for each rectangle
+    private BitSet[] normalRows;                    // the (array) y coordinates that are tried for each rectangle
+
+    private int[] previousEqual;                    // the previous input rectangle with the same sides
+                                                    // (in any orientation); -1 if none
+    private boolean[] transposed;                   // whether each rectangle is given in the other orientation
+                                                    // than the first rectangle with the same sides
+
+    // the best bin found by any worker, as (area << 32 | rotation combination), shared by all the workers
+    // so that an improvement found by one of them immediately bounds the search of the others
+    private AtomicLong incumbent = new AtomicLong(Long.MAX_VALUE);
+    private int combination;                        // the rotation combination searched by this worker
+
+    private Engine engine = Engine.GRID;            // the engine that solves the containment problems
+    private boolean coarseToFine;                   // whether a scaled down instance is solved first
+    private long timeLimit = COARSE_TIME_LIMIT;     // the time limit of the coarse to fine mode, in milliseconds
+    private boolean limited;                        // whether the time limit holds without the coarse to fine mode too
+    private long deadline;                          // the time at which the search stops (System.nanoTime);
+                                                    // 0 if there is no time limit
+    private boolean optimal;                        // whether the last placement is proven optimal
+                                                    // (the time limit was not reached)
+
+    public enum Engine {
+        GRID,       // place the rectangles one at a time in the cells of the occupancy grid
+        TWO_PHASE,  // first assign the x coordinates of all the rectangles, then their y coordinates
+    }
+
+    // the minimum number of rectangles left to place for the containment search to be split into tasks
+    private final static int PARALLEL_THRESHOLD = 6;
+
+    // the factor by which the dimensions are divided (and rounded up) for the coarse solution
+    private final static int COARSE_FACTOR = 4;
+
+    // the default time limit of the coarse to fine mode (for all the levels together), in milliseconds
+    private final static long COARSE_TIME_LIMIT = 2000;
+
+    // the number of states without a solution that are remembered by each search
+    private final static int TRANSPOSITION_TABLE_SIZE = 1 << 14;
 
     public OptimalRectanglePacking() {
         this.solution = true;
     }
 
     public OptimalRectanglePacking(boolean rotations, int height) {
-        this.solution = true;
+        this(rotations, height, true);
+    }
+
+    /**
+     * Constructor with the choice between the anytime solution
+     * and the iterative solution (which tests the candidate bins in the order of their area).
+     */
+    public OptimalRectanglePacking(boolean rotations, int height, boolean anytime) {
+        this.solution = anytime;
         this.rotationsAllowed = rotations;
         this.fixedHeight = height;
     }
 
+    /**
+     * Constructor with the choice of the engine that solves the containment problems as well.
+     * The two phase engine does not depend on the area of the bins as much as the grid engine,
+     * so it is meant for the instances with large dimensions.
+     */
+    public OptimalRectanglePacking(boolean rotations, int height, boolean anytime, Engine engine) {
+        this(rotations, height, anytime);
+        this.engine = engine;
+    }
+
+    /**
+     * Constructor that can enable the coarse to fine mode as well. An instance with the dimensions divided by
+     * {@code COARSE_FACTOR} (and rounded up) is solved first. Its placement, scaled back up, is a valid placement
+     * of the instance, so its bin bounds the search at full resolution, which only tries smaller bins.
+     *
+     * The mode has a time limit of {@code COARSE_TIME_LIMIT} for all the levels together, since a weak coarse
+     * bound does not shorten the search at full resolution. Once it is reached, the best bin found so far
+     * is returned (which is at least as good as the coarse one and as the one of the maximal rectangles
+     * heuristic), so the result is then no longer optimal.
+     */
+    public OptimalRectanglePacking(boolean rotations, int height, boolean anytime, Engine engine,
+                                   boolean coarseToFine) {
+        this(rotations, height, anytime, engine);
+        this.coarseToFine = coarseToFine;
+    }
+
+    /**
+     * Constructor with the choice of the time limit, which then holds without the coarse to fine mode as well.
+     * Once it is reached, the best bin found so far is returned, and {@link #isOptimal()} tells if it is optimal.
+     *
+     * @param timeLimit the time limit, in milliseconds
+     */
+    public OptimalRectanglePacking(boolean rotations, int height, boolean anytime, Engine engine,
+                                   boolean coarseToFine, long timeLimit) {
+        this(rotations, height, anytime, engine, coarseToFine);
+        this.timeLimit = timeLimit;
+        this.limited = true;
+    }
+
+    /**
+     * Constructor for a task of the containment search, which shares everything with the given worker
+     * except for the occupancy grid.
+     */
+    private OptimalRectanglePacking(OptimalRectanglePacking worker, OccupancyGrid grid) {
+        this.solution = worker.solution;
+        this.engine = worker.engine;
+        this.fixedHeight = worker.fixedHeight;
+        this.incumbent = worker.incumbent;
+        this.deadline = worker.deadline;
+        this.combination = worker.combination;
+        this.remainingArea = worker.remainingArea;
+        this.remainingWidth = worker.remainingWidth;
+        this.previousIdentical = worker.previousIdentical;
+        this.mirrored = worker.mirrored;
+        this.normalColumns = worker.normalColumns;
+        this.normalRows = worker.normalRows;
+        this.grid = grid;
+    }
+
+    /**
+     * Constructor for a worker that searches a single rotation combination,
+     * bounded by the best bin found by all the workers.
+     */
+    private OptimalRectanglePacking(boolean anytime, Engine engine, int height, AtomicLong incumbent,
+                                    long deadline, int combination) {
+        this.solution = anytime;
+        this.engine = engine;
+        this.fixedHeight = height;
+        this.incumbent = incumbent;
+        this.deadline = deadline;
+        this.combination = combination;
+    }
+
     @Override
     public Rectangle[] solver(Rectangle[] rectangles) {
-        if (solution) {
-            if (rotationsAllowed) {
-                int n = rectangles.length;
+        // the time limit holds for all the levels of the coarse to fine mode together
+        if ((coarseToFine || limited) && deadline == 0) {
+            deadline = System.nanoTime() + timeLimit * 1000000L;
+        }
 
-                Rectangle optimalBinRotations = (fixedHeight == 0) ?
-                        new Rectangle(Integer.MAX_VALUE, Integer.MAX_VALUE, -1) :
-                        new Rectangle(Integer.MAX_VALUE, fixedHeight, -1);
-                Rectangle[] optimalSolutionRotations = null;
+        // solve the instance with the common divisors of the dimensions divided out, if there are any
+        DimensionScaling scaling = new DimensionScaling(rectangles, rotationsAllowed, fixedHeight);
+        if (!scaling.isIdentity()) {
+            OptimalRectanglePacking scaled = new OptimalRectanglePacking(rotationsAllowed, scaling.getHeight(),
+                    solution, engine, coarseToFine);
+            scaled.deadline = deadline;
+            Rectangle[] placement = scaling.scaleUp(scaled.solver(scaling.scaleDown(rectangles)));
+            optimal = scaled.optimal;
+            return placement;
+        }
 
-                outer_combination:
-                for (int combination = 0; combination < (1 << n); ++combination) {
-                    Rectangle[] arr = copyRectangles(rectangles);
+        // the coarse placement (if any) is the initial best bin, so only smaller bins are searched
+        Rectangle[] coarsePlacement = coarseToFine ? coarseSolution(rectangles) : null;
+        if (coarseToFine) {
+            // the maximal rectangles heuristic is much faster than any level, and often better than the coarse
+            // placement, so the result is never worse than the heuristic, even if the time is up
+            Rectangle[] heuristic = new MaximalRectanglesAlgorithm(rotationsAllowed, fixedHeight)
+                    .solver(copyRectangles(rectangles));
+            if (coarsePlacement == null || enclosingArea(heuristic) < enclosingArea(coarsePlacement)) {
+                coarsePlacement = heuristic;
+            }
+        }
+        long initial = (coarsePlacement == null) ? Long.MAX_VALUE : enclosingArea(coarsePlacement) << 32;
 
-                    for (int bit = 0; bit < n; ++bit) {
-                        if ((combination & (1 << bit)) > 0) {
-                            arr[bit].rotate();
-                        }
-                    }
+        Rectangle[] placement;
+        if (rotationsAllowed) {
+            precomputeEqualRectangles(rectangles);
 
-                    for (int i = 0; i < n; i++) {
-                        if (fixedHeight > 0 && arr[i].height > fixedHeight) {
-                            continue outer_combination;
-                        }
-                    }
+            // search the rotation combinations in parallel, all bounded by the best bin found so far
+            AtomicLong incumbent = new AtomicLong(initial);
+            Pair<Rectangle[], Rectangle> optimalSolution = ForkJoinPool.commonPool().invoke(
+                    new CombinationTask(rectangles, incumbent, 0, 1 << rectangles.length));
 
-                    Pair<Rectangle[], Rectangle> solution =
-                            (fixedHeight == 0) ? anytimeSolution(arr) : anytimeSolutionFixedHeight(arr, fixedHeight);
+            // every combination is skipped if none of them can improve on the coarse placement
+            placement = (optimalSolution == null) ? null : optimalSolution.first;
+        } else {
+            incumbent = new AtomicLong(initial);
+            placement = solve(rectangles).first;
+        }
 
-                    // check if this rotation combination is better
-                    if ((long) optimalBinRotations.width * (long) optimalBinRotations.height >
-                            (long) solution.second.width * (long) solution.second.height) {
-                        optimalSolutionRotations = copyRectangles(solution.first);
+        // the searches may have given up at any point once the time was up
+        optimal = !timeIsUp();
 
-                        optimalBinRotations.width = solution.second.width;
-                        optimalBinRotations.height = solution.second.height;
-                    }
-                }
+        if (coarsePlacement != null && (placement == null || enclosingArea(placement) > enclosingArea(coarsePlacement))) {
+            return coarsePlacement;
+        }
+        return placement;
+    }
 
-                return optimalSolutionRotations;
-            } else {
-                return (fixedHeight == 0) ? anytimeSolution(rectangles).first :
-                        anytimeSolutionFixedHeight(rectangles, fixedHeight).first;
+    /**
+     * Check if the last placement is proven optimal (the search finished before the time limit, if any).
+     */
+    public boolean isOptimal() { return optimal; }
+
+    /**
+     * Solve the instance with the dimensions divided by {@code COARSE_FACTOR} and rounded up
+     * (in the coarse to fine mode as well, so there is a level for each power of the factor),
+     * and scale its placement back up. Each rectangle is then placed in a part of the bin that is at least
+     * as big as the rectangle, so the placement is valid (but not optimal) for the instance itself.
+     *
+     * @param rectangles the given array of rectangles
+     * @return the scaled up placement; null if the coarse instance cannot be solved within the fixed height
+     */
+    private Rectangle[] coarseSolution(Rectangle[] rectangles) {
+        int coarseHeight = fixedHeight / COARSE_FACTOR;
+
+        Rectangle[] coarse = new Rectangle[rectangles.length];
+        int maxSide = 0;
+        for (int i = 0; i < rectangles.length; i++) {
+            coarse[i] = new Rectangle((rectangles[i].width + COARSE_FACTOR - 1) / COARSE_FACTOR,
+                    (rectangles[i].height + COARSE_FACTOR - 1) / COARSE_FACTOR, rectangles[i].index);
+
+            // the rounded up rectangles must still fit in the (rounded down) fixed height
+            boolean fits = coarse[i].height <= coarseHeight || (rotationsAllowed && coarse[i].width <= coarseHeight);
+            if (fixedHeight > 0 && !fits) {
+                return null;
             }
-        } else {
-            // TODO (Maybe) Implement the iterative solution
-            return iterativeSolution(rectangles).first;
+            maxSide = Math.max(maxSide, Math.max(coarse[i].width, coarse[i].height));
         }
+
+        // the coarse instance is bounded by an even coarser one, as long as that one is any different
+        OptimalRectanglePacking coarseSolver = new OptimalRectanglePacking(rotationsAllowed, coarseHeight, solution,
+                engine, maxSide > COARSE_FACTOR);
+        // the coarse levels get half of the time that is left, the rest is for the search at full resolution
+        long now = System.nanoTime();
+        coarseSolver.deadline = now + Math.max(0, deadline - now) / 2;
+        Rectangle[] coarsePlacement = coarseSolver.solver(coarse);
+
+        Rectangle[] placement = copyRectangles(rectangles);
+        for (Rectangle rectangle : coarsePlacement) {
+            Rectangle scaled = placement[rectangle.index];
+            if (rectangle.rotated) {
+                scaled.rotate();
+            }
+            scaled.x = rectangle.x * COARSE_FACTOR;
+            scaled.y = rectangle.y * COARSE_FACTOR;
+        }
+
+        return placement;
     }
 
     /**
-     * Generate an anytime solution - i.e. generate an initial solution that keeps on improving.
-     * Can be stopped at anytime to get a pretty good enclosing bin.
+     * Compute the area of the enclosing bin of a placement (with the fixed height, if any).
      *
-     * This function does not handle fixed height.
+     * @param placement the placed rectangles
+     * @return the area of the enclosing bin
+     */
+    private long enclosingArea(Rectangle[] placement) {
+        int width = 0;
+        int height = fixedHeight;
+        for (Rectangle rectangle : placement) {
+            width = Math.max(width, rectangle.x + rectangle.width);
+            if (fixedHeight == 0) {
+                height = Math.max(height, rectangle.y + rectangle.height);
+            }
+        }
+
+        return (long) width * height;
+    }
+
+    /**
+     * Solve the problem for the rectangles in their current orientation,
+     * with the anytime or the iterative solution.
      *
      * @param rectangles the given array of rectangles
      * @return an array in which rectangles are placed optimally along with the enclosing bin
      */
-    private Pair<Rectangle[], Rectangle> anytimeSolution(Rectangle[] rectangles) {
-        Rectangle optimalBin;
-        Rectangle[] optimalPlacement;
+    private Pair<Rectangle[], Rectangle> solve(Rectangle[] rectangles) {
+        if (solution) {
+            return (fixedHeight == 0) ? anytimeSolution(rectangles) : anytimeSolutionFixedHeight(rectangles, fixedHeight);
+        } else {
+            return iterativeSolution(rectangles);
+        }
+    }
 
-        // the argument must not be modified
-        Rectangle[] arr;
+    /**
+     * Search the given rotation combination, unless it cannot improve on the best bin found so far.
+     *
+     * @param rectangles the given array of rectangles
+     * @return the best placement found for the rotation combination along with its enclosing bin;
+     *         null if the rotation combination was skipped
+     */
+    private Pair<Rectangle[], Rectangle> solveCombination(Rectangle[] rectangles) {
+        Rectangle[] arr = copyRectangles(rectangles);
+
+        for (int bit = 0; bit < arr.length; ++bit) {
+            if ((combination & (1 << bit)) > 0) {
+                arr[bit].rotate();
+            }
+        }
+
+        long totalArea = 0;
+        int maxWidth = 0;
+        int maxHeight = 0;
+        for (Rectangle rectangle : arr) {
+            totalArea += (long) rectangle.width * rectangle.height;
+            maxWidth = Math.max(maxWidth, rectangle.width);
+            maxHeight = Math.max(maxHeight, rectangle.height);
+        }
+
+        // skip the combination if even the smallest bin it could fit in cannot improve on the best bin
+        long lowerBound = (fixedHeight == 0) ?
+                Math.max(totalArea, (long) maxWidth * maxHeight) :
+                (long) fixedHeight * Math.max(maxWidth, (totalArea + fixedHeight - 1) / fixedHeight);
+        if (!canImprove(lowerBound)) {
+            return null;
+        }
+
+        return solve(arr);
+    }
+
+    /**
+     * Find, for each rectangle, the previous rectangle with the same sides (in any orientation),
+     * and whether it is given in the other orientation than the first rectangle with these sides.
+     * For example, a 4x8 rectangle and an 8x4 rectangle are the same once one of them is rotated.
+     *
+     * @param rectangles the given array of rectangles
+     */
+    private void precomputeEqualRectangles(Rectangle[] rectangles) {
+        previousEqual = new int[rectangles.length];
+        transposed = new boolean[rectangles.length];
+
+        for (int i = 0; i < rectangles.length; i++) {
+            previousEqual[i] = -1;
+            for (int j = i - 1; j >= 0; j--) {
+                if (sameSides(rectangles[i], rectangles[j])) {
+                    previousEqual[i] = j;
+                    transposed[i] = transposed[j] != (rectangles[i].width != rectangles[j].width);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Check if a rotation combination has to be searched. Many combinations lead to the same
+     * set of rectangles (or to a transposed one), so only one of them is searched:
+     * <ul>
+     *     <li>rotating a square does not change anything, so squares are never rotated</li>
+     *     <li>rectangles with the same sides are interchangeable, so only the first ones of them are turned
+     *     away from the orientation of the first of them (which is the given orientation for some of them,
+     *     and the rotated one for the others)</li>
+     *     <li>a rectangle that is taller than the fixed height in one orientation has only one choice</li>
+     *     <li>with a free height, rotating all the rectangles transposes the bin, so at most half of the group
+     *     of the first rectangle that is not a square is rotated</li>
+     * </ul>
+     *
+     * @param rectangles the given array of rectangles
+     * @param combination the rotation combination
+     * @return true if the combination has to be searched; false otherwise
+     */
+    private boolean isCanonical(Rectangle[] rectangles, int combination) {
+        int first = -1;         // the first rectangle that is not a square
+        int group = 0;          // the number of rectangles with the same sides as the first one
+        int turnedInGroup = 0;  // the number of them that are turned away from the orientation of the first one
+
+        for (int i = 0; i < rectangles.length; i++) {
+            Rectangle rectangle = rectangles[i];
+            boolean rotated = (combination & (1 << i)) != 0;
+            boolean turned = rotated != transposed[i];
+
+            if (rotated && rectangle.width == rectangle.height) {
+                return false;
+            }
+            if (fixedHeight > 0 && (rotated ? rectangle.width : rectangle.height) > fixedHeight) {
+                return false;
+            }
+            int previous = previousEqual[i];
+            if (turned && previous >= 0 && ((combination & (1 << previous)) != 0) == transposed[previous]) {
+                return false;
+            }
+
+            if (first < 0 && rectangle.width != rectangle.height) {
+                first = i;
+            }
+            if (first >= 0 && sameSides(rectangle, rectangles[first])) {
+                group++;
+                turnedInGroup += turned ? 1 : 0;
+            }
+        }
+
+        return fixedHeight > 0 || 2 * turnedInGroup <= group;
+    }
+
+    /**
+     * Check if two rectangles have the same sides, in any orientation.
+     */
+    private boolean sameSides(Rectangle a, Rectangle b) {
+        return (a.width == b.width && a.height == b.height) || (a.width == b.height && a.height == b.width);
+    }
+
+    /**
+     * Check if a bin of the given area would improve on the best bin found by all the workers.
+     * Ties are broken in favour of the lowest rotation combination, so the result does not depend
+     * on the order in which the workers find their bins.
+     *
+     * @param area the area of the bin
+     * @return true if the bin would be better; false otherwise
+     */
+    private boolean canImprove(long area) {
+        return ((area << 32) | combination) < incumbent.get();
+    }
+
+    /**
+     * Check if the time limit (if any) has been reached. The searches then give up, so only the bins
+     * found before are returned.
+     */
+    private boolean timeIsUp() {
+        return deadline != 0 && System.nanoTime() - deadline > 0;
+    }
+
+    /**
+     * Share a bin that was found by this worker with the other workers.
+     *
+     * @param area the area of the bin
+     */
+    private void improve(long area) {
+        incumbent.accumulateAndGet((area << 32) | combination, Math::min);
+    }
 
+    /**
+     * Greedily place the rectangles, each one in the leftmost, lowest position possible,
+     * to determine an initial enclosing bin.
+     *
+     * @param rectangles the given array of rectangles
+     * @param fixedHeight the height of the bin; 0 to use the height of the tallest rectangle
+     * @return the greedy placement (in the order of the indices) along with the enclosing bin
+     */
+    private Pair<Rectangle[], Rectangle> greedySolution(Rectangle[] rectangles, int fixedHeight) {
         // sort the rectangles by height
         Rectangle[] temp = copyRectangles(rectangles);
         Arrays.sort(temp, new Comparator<Rectangle>() {
@@ -101,24 +459,14 @@ public class OptimalRectanglePacking implements Solver {
             }
         });
 
-        // greedily place the rectangles to determine an initial width and an initial height for the enclosing bin
-        placementMatrix = new int[PLACEMENT_MATRIX_SIZE][PLACEMENT_MATRIX_SIZE];
-        for (int i = 0; i < PLACEMENT_MATRIX_SIZE; i++) {
-            for (int j = 0; j < PLACEMENT_MATRIX_SIZE; j++) {
-                placementMatrix[i][j] = -1;
-            }
+        // start from a bin that is wide enough, since placing all the rectangles next to each other always fits
+        int width = 0;
+        for (Rectangle rectangle : temp) {
+            width += rectangle.width;
         }
+        int height = (fixedHeight > 0) ? fixedHeight : temp[0].height;   // the fixed height or the tallest rectangle
 
-        int width = PLACEMENT_MATRIX_SIZE;
-        int height = temp[0].height;            // height of the tallest rectangle
-
-        mapWidth = new HashMap<>();
-
-        // map width to specific rectangle indices (used to not traverse the whole placement matrix when placing
-        // a rectangle).
-        for (int i = 0; i < temp.length; i++) {
-            mapWidth.put(temp[i].index, temp[i].width);
-        }
+        grid = new OccupancyGrid(width, height);
 
         for (int i = 0; i < temp.length; i++) {
             int bestX = Integer.MAX_VALUE;
@@ -126,8 +474,8 @@ public class OptimalRectanglePacking implements Solver {
 
             for (int y = height - 1; y >= 0; y--) {
                 for (int x = 0; x < width; x++) {
-                    if (placementMatrix[y][x] >= 0) { // skip spaces that are already occupied by other rectangles
-                        x += mapWidth.get(placementMatrix[y][x]) - 1;
+                    if (grid.isOccupied(x, y)) { // skip spaces that are already occupied by other rectangles
+                        x = grid.nextFree(x, y) - 1;
                         continue;
                     }
                     // check if we have enough space to place it
@@ -152,17 +500,43 @@ public class OptimalRectanglePacking implements Solver {
         }
         width = tempWidth;
 
-        // reset the indices and setup the array on which we will work on
-        arr = new Rectangle[temp.length];
+        // reset the indices
+        Rectangle[] arr = new Rectangle[temp.length];
         for (int i = 0; i < temp.length; i++) {
             arr[temp[i].index] = copyRectangle(temp[i]);
         }
 
+        return new Pair<>(arr, new Rectangle(width, height, -1));
+    }
+
+    /**
+     * Generate an anytime solution - i.e. generate an initial solution that keeps on improving.
+     * Can be stopped at anytime to get a pretty good enclosing bin.
+     *
+     * This function does not handle fixed height.
+     *
+     * @param rectangles the given array of rectangles
+     * @return an array in which rectangles are placed optimally along with the enclosing bin
+     */
+    private Pair<Rectangle[], Rectangle> anytimeSolution(Rectangle[] rectangles) {
+        Rectangle optimalBin;
+        Rectangle[] optimalPlacement;
+
+        // the argument must not be modified
+        Rectangle[] arr;
+
+        // greedily place the rectangles to determine an initial width and an initial height for the enclosing bin
+        Pair<Rectangle[], Rectangle> greedy = greedySolution(rectangles, 0);
+        arr = greedy.first;
+        int width = greedy.second.width;
+        int height = greedy.second.height;
+
         // set an initial value for the optimal bin
         optimalBin = new Rectangle(width, height, -1);
 
         // save the greedy placement as an initial placement of the optimal solution (to be improved further)
         optimalPlacement = copyRectangles(arr);
+        improve((long) width * height);
 
         //sort on area (descending)
         Arrays.sort( arr, new Comparator<Rectangle>() {
@@ -172,41 +546,43 @@ public class OptimalRectanglePacking implements Solver {
             }
         });
 
+        // precompute the area and the width of the remaining rectangles for the pruning
+        precomputeRemaining(arr);
+        precomputeSymmetry(arr);
+
         // determine when to stop shrinking the rectangle
         int stop = Integer.MIN_VALUE;
         for (Rectangle rectangle : arr) {
             stop = Math.max(stop, rectangle.width);
         }
 
-        while (width >= stop) {
-            // clear the placement matrix
-            for (int i = 0; i < PLACEMENT_MATRIX_SIZE; i++) {
-                for (int j = 0; j < PLACEMENT_MATRIX_SIZE; j++) {
-                    this.placementMatrix[i][j] = -1;
-                }
-            }
-
-            // determine infeasibility
-            boolean infeasible = false;
+        // the area of the smallest bin that is not rejected by the lower bounds:
+        // once the best bin (of any worker) is that small, no better bin can be found
+        LowerBounds bounds = new LowerBounds(arr);
+        long lowerBound = bounds.minimumArea(0, (long) width * height);
 
-            // the total area of the rectangles cannot exceed the area of the bounding rectangle
-            int totalArea = 0;
-            for (Rectangle rectangle : arr) {
-                totalArea += rectangle.width * rectangle.height;
+        while (width >= stop && canImprove(lowerBound) && !timeIsUp()) {
+            if (!canImprove((long) width * height)) {
+                // this bin cannot improve on the best bin found by any worker, so try a narrower one
+                width--;
+                continue;
             }
 
-            infeasible |= ((width * height) < totalArea);
+            // start from an empty grid of the size of the current bin
+            grid = new OccupancyGrid(width, height);
+
+            // determine infeasibility, the lower bounds reject most bins without a search
+            boolean infeasible = !bounds.fits(width, height);
 
             // now call the containment algorithm and see if we can fit the rectangles in the current bin
-            infeasible |= (!containmentAlgorithm(width, height, arr, 0));
+            infeasible = infeasible || !containmentAlgorithm(width, height, arr, 0);
 //            System.out.println(infeasible);
             if (infeasible) {
                 height++;
 
-                // if the area is already bigger than the currently best area
+                // if the area is already bigger than the currently best area (of any worker)
                 // don't increase the height any further (TODO verify that this is indeed correct)
-                if ((long) optimalBin.width * (long) optimalBin.height <
-                        (long) width * (long) height) {
+                if (!canImprove((long) width * (long) height)) {
                     width--;
                 }
             } else {
@@ -215,6 +591,7 @@ public class OptimalRectanglePacking implements Solver {
                         (long) width * (long) height) {
                     optimalBin.width = width;
                     optimalBin.height = height;
+                    improve((long) width * height);
 
                     optimalPlacement = copyRectangles(arr);
 
@@ -228,7 +605,7 @@ public class OptimalRectanglePacking implements Solver {
 //                System.out.printf("area: %d\n", width * height);
 //                for (int i = 0; i < height; i++) {
 //                    for (int j = 0; j < width; j++) {
-//                        System.out.print((placementMatrix[i][j] == -1) ? "." : placementMatrix[i][j]);
+//                        System.out.print(grid.isOccupied(j, i) ? "#" : ".");
 //                    }
 //                   System.out.println();
 //                }
@@ -261,77 +638,18 @@ public class OptimalRectanglePacking implements Solver {
         // the argument must not be modified
         Rectangle[] arr;
 
-        // sort the rectangles by height
-        Rectangle[] temp = copyRectangles(rectangles);
-        Arrays.sort(temp, new Comparator<Rectangle>() {
-            @Override
-            public int compare(Rectangle o1, Rectangle o2) {
-                return o2.height - o1.height;
-            }
-        });
-
         // greedily place the rectangles to determine an initial width and an initial height for the enclosing bin
-        placementMatrix = new int[PLACEMENT_MATRIX_SIZE][PLACEMENT_MATRIX_SIZE];
-        for (int i = 0; i < PLACEMENT_MATRIX_SIZE; i++) {
-            for (int j = 0; j < PLACEMENT_MATRIX_SIZE; j++) {
-                placementMatrix[i][j] = -1;
-            }
-        }
-
-        int width = PLACEMENT_MATRIX_SIZE;
-        int height = fixedHeight;
-
-        mapWidth = new HashMap<>();
-
-        // map width to specific rectangle indices (used to not traverse the whole placement matrix when placing
-        // a rectangle).
-        for (int i = 0; i < temp.length; i++) {
-            mapWidth.put(temp[i].index, temp[i].width);
-        }
-
-        for (int i = 0; i < temp.length; i++) {
-            int bestX = Integer.MAX_VALUE;
-            int bestY = Integer.MIN_VALUE;
-
-            for (int y = height - 1; y >= 0; y--) {
-                for (int x = 0; x < width; x++) {
-                    if (placementMatrix[y][x] >= 0) { // skip spaces that are already occupied by other rectangles
-                        x += mapWidth.get(placementMatrix[y][x]) - 1;
-                        continue;
-                    }
-                    // check if we have enough space to place it
-                    if (canPlaceAt(x, y, temp[i], width, height)) {
-                        // update the possible placement of the current rectangle
-                        if (x < bestX || (x == bestX && y > bestY)) {
-                            bestX = x;
-                            bestY = y;
-                        }
-                    }
-                }
-            }
-
-            // place the current rectangle in the leftmost, lowest position possible
-            placeRectangle(bestX, bestY, temp[i], width, height);
-        }
-
-        // determine the width of the current enclosing bin
-        int tempWidth = Integer.MIN_VALUE;
-        for (Rectangle rectangle : temp) {
-            tempWidth = Math.max(tempWidth, rectangle.x + rectangle.width);
-        }
-        width = tempWidth;
-
-        // reset the indices and setup the array on which we will work on
-        arr = new Rectangle[temp.length];
-        for (int i = 0; i < temp.length; i++) {
-            arr[temp[i].index] = copyRectangle(temp[i]);
-        }
+        Pair<Rectangle[], Rectangle> greedy = greedySolution(rectangles, fixedHeight);
+        arr = greedy.first;
+        int width = greedy.second.width;
+        int height = greedy.second.height;
 
         // set an initial value for the optimal bin
         optimalBin = new Rectangle(width, height, -1);
 
         // save the greedy placement as an initial placement of the optimal solution (to be improved further)
         optimalPlacement = copyRectangles(arr);
+        improve((long) width * height);
 
         //sort on area (descending)
         Arrays.sort( arr, new Comparator<Rectangle>() {
@@ -341,33 +659,36 @@ public class OptimalRectanglePacking implements Solver {
             }
         });
 
+        // precompute the area and the width of the remaining rectangles for the pruning
+        precomputeRemaining(arr);
+        precomputeSymmetry(arr);
+
         // determine when to stop shrinking the rectangle
         int stop = Integer.MIN_VALUE;
         for (Rectangle rectangle : arr) {
             stop = Math.max(stop, rectangle.width);
         }
 
-        while (width >= stop) {
-            // clear the placement matrix
-            for (int i = 0; i < PLACEMENT_MATRIX_SIZE; i++) {
-                for (int j = 0; j < PLACEMENT_MATRIX_SIZE; j++) {
-                    this.placementMatrix[i][j] = -1;
-                }
-            }
-
-            // determine infeasibility
-            boolean infeasible = false;
+        // the area of the smallest bin that is not rejected by the lower bounds:
+        // once the best bin (of any worker) is that small, no better bin can be found
+        LowerBounds bounds = new LowerBounds(arr);
+        long lowerBound = bounds.minimumArea(fixedHeight, (long) width * height);
 
-            // the total area of the rectangles cannot exceed the area of the bounding rectangle
-            int totalArea = 0;
-            for (Rectangle rectangle : arr) {
-                totalArea += rectangle.width * rectangle.height;
+        while (width >= stop && canImprove(lowerBound) && !timeIsUp()) {
+            if (!canImprove((long) width * height)) {
+                // this bin cannot improve on the best bin found by any worker, so try a narrower one
+                width--;
+                continue;
             }
 
-            infeasible |= ((width * height) < totalArea);
+            // start from an empty grid of the size of the current bin
+            grid = new OccupancyGrid(width, height);
+
+            // determine infeasibility, the lower bounds reject most bins without a search
+            boolean infeasible = !bounds.fits(width, height);
 
             // now call the containment algorithm and see if we can fit the rectangles in the current bin
-            infeasible |= (!containmentAlgorithm(width, height, arr, 0));
+            infeasible = infeasible || !containmentAlgorithm(width, height, arr, 0);
 
             if (infeasible) {
                 // can't fit the rectangles - useless to try with a smaller width - so just stop
@@ -378,6 +699,7 @@ public class OptimalRectanglePacking implements Solver {
                         (long) width * (long) height) {
                     optimalBin.width = width;
                     optimalBin.height = height;
+                    improve((long) width * height);
 
                     optimalPlacement = copyRectangles(arr);
 
@@ -398,35 +720,370 @@ public class OptimalRectanglePacking implements Solver {
      * A function that solves the containment problem - i.e. given a list of rectangles,
      * can they be placed in an enclosing bin of given width and height ?
      *
+     * When enough rectangles remain, the search is split into a task for each position of the first rectangle,
+     * which are spread over the cores by the fork join pool. The search stops as soon as any task finds a packing.
+     *
      * @param width the width of the enclosing bin
      * @param height the height of the enclosing bin
      * @param rectangles the given list of rectangles
-     * @return true if the problem can be solved; false otherwise
+     * @return true if the problem can be solved (the rectangles are then placed); false otherwise
      */
     private boolean containmentAlgorithm(int width, int height, Rectangle[] rectangles, int index) {
-        if (index == rectangles.length) { // a solution of packing the rectangles into the bin has been found
+        precomputeNormalPatterns(width, height, rectangles);
+
+        if (engine == Engine.TWO_PHASE) {
+            return twoPhaseAlgorithm(width, height, rectangles, index);
+        }
+
+        if (rectangles.length - index < PARALLEL_THRESHOLD) {
+            return search(width, height, rectangles, index, null);
+        }
+
+        int[] cursorX = new int[rectangles.length];
+        int[] cursorY = new int[rectangles.length];
+        AtomicBoolean found = new AtomicBoolean();
+
+        // create a task for each position of the first rectangle, with its own copy of the occupancy state
+        ArrayList<ContainmentTask> tasks = new ArrayList<>();
+        boolean next = startPositions(width, height, rectangles, index, cursorX, cursorY);
+        while (next && nextPosition(width, height, rectangles, index, cursorX, cursorY)) {
+            placeRectangle(cursorX[index], cursorY[index], rectangles[index], width, height);
+            tasks.add(new ContainmentTask(new OptimalRectanglePacking(this, new OccupancyGrid(grid)),
+                    width, height, copyRectangles(rectangles), index + 1, found));
+            clearRectangle(cursorX[index], cursorY[index], rectangles[index]);
+            cursorX[index]++;
+        }
+
+        ForkJoinTask.invokeAll(tasks);
+
+        for (ContainmentTask task : tasks) {
+            Rectangle[] packing = task.join();
+            if (packing != null) {
+                for (int i = 0; i < rectangles.length; i++) {
+                    rectangles[i].x = packing[i].x;
+                    rectangles[i].y = packing[i].y;
+                }
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * The two phase engine for the containment problem. First the x coordinates of all the rectangles are assigned,
+     * so that no column of the bin is crossed by rectangles that are taller than the bin together
+     * (the cumulative profile of the columns). Only then the y coordinates are searched for, with the x coordinates
+     * fixed, which leaves few choices. The search of the x coordinates does not depend on the height of the bin.
+     *
+     * @param width the width of the enclosing bin
+     * @param height the height of the enclosing bin
+     * @param rectangles the given list of rectangles
+     * @param index the index of the first rectangle to be placed
+     * @return true if the problem can be solved (the rectangles are then placed); false otherwise
+     */
+    private boolean twoPhaseAlgorithm(int width, int height, Rectangle[] rectangles, int index) {
+        int[] profile = new int[width];             // the total height of the rectangles that cross each column
+        int[] columns = new int[rectangles.length]; // the x coordinate of each rectangle
+
+        return assignColumns(width, height, rectangles, index, index, profile, columns);
+    }
+
+    /**
+     * Assign the x coordinate of a rectangle and of the ones after it, trying the normal positions
+     * from left to right. Identical rectangles are assigned in the order of their x coordinates.
+     *
+     * @param start the index of the first rectangle to be placed
+     * @param index the index of the rectangle to be assigned
+     * @param profile the total height of the rectangles that cross each column
+     * @param columns the x coordinate of each rectangle
+     * @return true if a packing was found (the rectangles are then placed); false otherwise
+     */
+    private boolean assignColumns(int width, int height, Rectangle[] rectangles, int start, int index,
+                                  int[] profile, int[] columns) {
+        if (index == rectangles.length) {
+            // every column can hold the rectangles that cross it, so look for their y coordinates
+            return assignRows(width, height, rectangles, start, columns);
+        }
+        if (timeIsUp()) {
+            return false;
+        }
+
+        Rectangle rectangle = rectangles[index];
+        int from = (previousIdentical[index] >= start) ? columns[previousIdentical[index]] : 0;
+        int to = (index == mirrored) ? (width - rectangle.width) / 2 : width - rectangle.width;
+
+        BitSet normal = normalColumns[index];
+        for (int x = normal.nextSetBit(from); x >= 0 && x <= to; x = normal.nextSetBit(x + 1)) {
+            if (!fitsProfile(x, rectangle.width, rectangle.height, profile, height)) {
+                continue;
+            }
+
+            addToProfile(x, rectangle, profile, rectangle.height);
+            columns[index] = x;
+
+            if (!profilePruning(width, height, rectangles, index + 1, profile)
+                    && assignColumns(width, height, rectangles, start, index + 1, profile, columns)) {
+                return true;
+            }
+
+            addToProfile(x, rectangle, profile, -rectangle.height);
+        }
+
+        return false;
+    }
+
+    /**
+     * Check if the columns from x onwards can hold another rectangle of the given dimensions.
+     */
+    private boolean fitsProfile(int x, int rectangleWidth, int rectangleHeight, int[] profile, int height) {
+        for (int i = x; i < x + rectangleWidth; i++) {
+            if (profile[i] + rectangleHeight > height) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Add the height of a rectangle to the columns that it crosses (or remove it, if the height is negative).
+     */
+    private void addToProfile(int x, Rectangle rectangle, int[] profile, int rectangleHeight) {
+        for (int i = x; i < x + rectangle.width; i++) {
+            profile[i] += rectangleHeight;
+        }
+    }
+
+    /**
+     * Prune the assignment of the x coordinates if the free space of the columns cannot hold
+     * the area of the remaining rectangles, or if one of them does not fit in any of the columns.
+     *
+     * @param index the index of the first remaining rectangle
+     * @param profile the total height of the rectangles that cross each column
+     * @return true if the assignment can be pruned; false otherwise
+     */
+    private boolean profilePruning(int width, int height, Rectangle[] rectangles, int index, int[] profile) {
+        int freeSpace = 0;
+        for (int i = 0; i < width; i++) {
+            freeSpace += height - profile[i];
+        }
+        if (freeSpace < remainingArea[index]) {
             return true;
         }
 
+        for (int i = index; i < rectangles.length; i++) {
+            // look for enough consecutive columns with enough free space for the rectangle
+            int run = 0;
+            for (int x = 0; x < width && run < rectangles[i].width; x++) {
+                run = (profile[x] + rectangles[i].height <= height) ? run + 1 : 0;
+            }
+            if (run < rectangles[i].width) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Find the y coordinates of the rectangles, with their x coordinates fixed. The normal positions are tried
+     * from the bottom up. Identical rectangles with the same x coordinate are placed from the bottom up.
+     *
+     * @param start the index of the first rectangle to be placed
+     * @param columns the x coordinate of each rectangle
+     * @return true if the y coordinates were found (the rectangles are then placed); false otherwise
+     */
+    private boolean assignRows(int width, int height, Rectangle[] rectangles, int start, int[] columns) {
+        int[] rows = new int[rectangles.length];   // the (array) y coordinate of each rectangle
+
+        int index = start;
+        rows[index] = height;
+        while (index >= start && !timeIsUp()) {
+            Rectangle rectangle = rectangles[index];
+            int minY = (index == mirrored) ? (height - rectangle.height) / 2 : 0;
+            int maxY = Math.min(rows[index] - 1, height - rectangle.height);
+
+            int previous = previousIdentical[index];
+            if (previous >= start && columns[previous] == columns[index]) {
+                maxY = Math.min(maxY, rows[previous] - 1);
+            }
+
+            // the next normal row (from the bottom up) in which the rectangle can be placed
+            int y = normalRows[index].previousSetBit(maxY);
+            while (y >= minY && !canPlaceAt(columns[index], y, rectangle, width, height)) {
+                y = (y == 0) ? -1 : normalRows[index].previousSetBit(y - 1);
+            }
+
+            if (y >= minY) {
+                placeRectangle(columns[index], y, rectangle, width, height);
+                rows[index] = y;
+                index++;
+
+                if (index == rectangles.length) { // a solution of packing the rectangles into the bin has been found
+                    return true;
+                }
+                rows[index] = height;
+                continue;
+            }
+
+            // there are no rows left for the current rectangle, so go back to the previous one
+            index--;
+            if (index >= start) {
+                clearRectangle(columns[index], rows[index], rectangles[index]);
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Depth first search for a packing of the rectangles from the given index onwards, with an explicit stack
+     * that holds the position of each placed rectangle.
+     *
+     * The states in which no packing of the remaining rectangles exists are remembered in a transposition table,
+     * since the same occupied cells are often reached again with other rectangles in other positions.
+     *
+     * @param width the width of the enclosing bin
+     * @param height the height of the enclosing bin
+     * @param rectangles the given list of rectangles
+     * @param start the index of the first rectangle to be placed
+     * @param found set once a packing has been found by any task; null if the search is not split into tasks
+     * @return true if a packing has been found (the rectangles are then placed); false otherwise
+     */
+    private boolean search(int width, int height, Rectangle[] rectangles, int start, AtomicBoolean found) {
+        if (start == rectangles.length) { // a solution of packing the rectangles into the bin has been found
+            return true;
+        }
+
+        int[] cursorX = new int[rectangles.length];
+        int[] cursorY = new int[rectangles.length];
+        TranspositionTable failed = new TranspositionTable(TRANSPOSITION_TABLE_SIZE);
+
+        int index = start;
+        boolean next = startPositions(width, height, rectangles, index, cursorX, cursorY);
+
+        while (true) {
+            // stop as soon as another task has found a packing, or the time is up
+            if ((found != null && found.get()) || timeIsUp()) {
+                return false;
+            }
+
+            if (next && nextPosition(width, height, rectangles, index, cursorX, cursorY)) {
+                placeRectangle(cursorX[index], cursorY[index], rectangles[index], width, height);
+                index++;
+
+                if (index == rectangles.length) { // a solution of packing the rectangles into the bin has been found
+                    if (found != null) {
+                        found.set(true);
+                    }
+                    return true;
+                }
+
+                // cut the state off if it is already known to have no solution
+                next = startPositions(width, height, rectangles, index, cursorX, cursorY) &&
+                        !failed.contains(stateKey(rectangles, index));
+                continue;
+            }
+
+            // there are no positions left for the current rectangle, so the state has no solution
+            failed.add(stateKey(rectangles, index));
+
+            // go back to the previous rectangle
+            index--;
+            if (index < start) {
+                return false;
+            }
+            clearRectangle(cursorX[index], cursorY[index], rectangles[index]);
+            cursorX[index]++;
+            next = true;
+        }
+    }
+
+    /**
+     * Set the cursor of a rectangle to the first position to be tried for it,
+     * unless the current partial solution can be pruned.
+     *
+     * @return true if there are positions to be tried; false if the partial solution can be pruned
+     */
+    private boolean startPositions(int width, int height, Rectangle[] rectangles, int index,
+                                   int[] cursorX, int[] cursorY) {
         // Prune the current subtree if no solution can be found.
         if (cumulativeWidthPruning(width, height, rectangles, index)) {
             return false;
         }
 
-        for (int y = height - 1; y >= 0; y--) {
-            for (int x = 0; x < width; x++) {
-                if (placementMatrix[y][x] >= 0) { // skip spaces that are already occupied by other rectangles
-                    x += mapWidth.get(placementMatrix[y][x]) - 1;
+        // the positions are tried from the bottom row up and from left to right
+        cursorY[index] = height - 1;
+        cursorX[index] = 0;
+
+        if (previousIdentical[index] >= 0) {
+            // identical rectangles are interchangeable, so they are placed in the order of the positions
+            Rectangle previous = rectangles[previousIdentical[index]];
+            cursorY[index] = height - (previous.y + previous.height);
+            cursorX[index] = previous.x + 1;
+        }
+
+        return true;
+    }
+
+    /**
+     * Compute the key of the current state of the search: the occupied cells, the index of the next rectangle
+     * and the positions that restrict the remaining rectangles (those of the last placed rectangle
+     * of each group of identical rectangles that is not completely placed yet).
+     *
+     * @param rectangles the given list of rectangles
+     * @param index the index of the next rectangle to be placed
+     * @return the key of the state
+     */
+    private long stateKey(Rectangle[] rectangles, int index) {
+        long key = grid.getHash() ^ OccupancyGrid.mix(index, -1);
+
+        for (int i = index; i < rectangles.length; i++) {
+            int previous = previousIdentical[i];
+            if (previous >= 0 && previous < index) {
+                key ^= OccupancyGrid.mix(((long) rectangles[previous].x << 32) | rectangles[previous].y, -2 - i);
+            }
+        }
+
+        return key;
+    }
+
+    /**
+     * Move the cursor of a rectangle to the next normal position (starting from the cursor) where it can be placed.
+     *
+     * @return true if such a position was found; false otherwise
+     */
+    private boolean nextPosition(int width, int height, Rectangle[] rectangles, int index,
+                                 int[] cursorX, int[] cursorY) {
+        Rectangle rectangle = rectangles[index];
+
+        int minY = 0;
+        int maxX = width - 1;
+        if (index == mirrored) {
+            // every packing can be mirrored horizontally and vertically, so keep this rectangle in the bottom left
+            minY = (height - rectangle.height) / 2;
+            maxX = (width - rectangle.width) / 2;
+        }
+
+        BitSet columns = normalColumns[index];
+        BitSet rows = normalRows[index];
+
+        for (int y = cursorY[index], x = cursorX[index]; y >= minY; y--, x = 0) {
+            if (!rows.get(y)) { // only the normal positions are tried
+                continue;
+            }
+
+            for (x = columns.nextSetBit(x); x >= 0 && x <= maxX; x = columns.nextSetBit(x + 1)) {
+                if (grid.isOccupied(x, y)) { // skip spaces that are already occupied by other rectangles
+                    x = grid.nextFree(x, y) - 1;
                     continue;
                 }
 
                 // check if we have enough space to place it
-                if (canPlaceAt(x, y, rectangles[index], width, height)) {
-                    placeRectangle(x, y, rectangles[index], width, height);
-                    if (containmentAlgorithm(width, height, rectangles, index + 1)) {
-                        return true;
-                    }
-                    clearRectangle(x, y, rectangles[index]);
+                if (canPlaceAt(x, y, rectangle, width, height)) {
+                    cursorX[index] = x;
+                    cursorY[index] = y;
+                    return true;
                 }
             }
         }
@@ -446,35 +1103,24 @@ public class OptimalRectanglePacking implements Solver {
      * @return true if the subtree can be pruned; false otherwise
      */
     private boolean cumulativeWidthPruning(int width, int height, Rectangle[] rectangles, int index) {
-        // create the histogram containing the number of free cells that have a certain width.
-        histogram = new int[width];
+        // the histogram of the blocks of free cells is kept up to date by the grid
+        int[] freeRuns = grid.getFreeRuns();
 
-        // initialize the histogram
-        for (int i = 0; i < width; i++) {
-            histogram[i] = 0;
+        // the free cells in blocks that are wide enough for the narrowest remaining rectangle
+        // must be able to hold the area of the remaining rectangles
+        int freeSpace = 0;
+        for (int i = remainingWidth[index] - 1; i < width; i++) {
+            freeSpace += freeRuns[i];
+        }
+        if (freeSpace < remainingArea[index]) {
+            return true;
         }
 
-        int widthCounter = 0; // count the width of the block of free cells.
-
-        // go through all the cells to find free ones
-        for (int y = height - 1; y >= 0; y--) {
-            for (int x = 0; x < width; x++) {
-                if (placementMatrix[y][x] >= 0) { // skip spaces that are already occupied by other rectangles
-                    x += mapWidth.get(placementMatrix[y][x]) - 1;
-                    if (widthCounter > 0) {
-                        histogram[widthCounter - 1] = histogram[widthCounter - 1] + widthCounter;
-                        widthCounter = 0;
-                    }
-                    continue;
-                }
-                widthCounter++;
-            }
-            // We ended a row
-            if (widthCounter > 0) {
-                histogram[widthCounter - 1] = histogram[widthCounter - 1] + widthCounter;
-                widthCounter = 0;
-            }
+        // work on a copy of the histogram, since it is consumed by the remaining rectangles
+        if (histogram == null || histogram.length != width) {
+            histogram = new int[width];
         }
+        System.arraycopy(freeRuns, 0, histogram, 0, width);
 
         // now we go through all the remaining rectangles and update the histogram to see if we have enough space
         for (int i = index; i < rectangles.length; i++) {
@@ -487,6 +1133,92 @@ public class OptimalRectanglePacking implements Solver {
         return false;
     }
 
+    /**
+     * Precompute the total area and the smallest width of the rectangles from each index onwards.
+     *
+     * @param rectangles the rectangles, in the order in which they are placed
+     */
+    private void precomputeRemaining(Rectangle[] rectangles) {
+        remainingArea = new int[rectangles.length + 1];
+        remainingWidth = new int[rectangles.length + 1];
+        remainingWidth[rectangles.length] = Integer.MAX_VALUE;
+
+        for (int i = rectangles.length - 1; i >= 0; i--) {
+            remainingArea[i] = remainingArea[i + 1] + rectangles[i].width * rectangles[i].height;
+            remainingWidth[i] = Math.min(remainingWidth[i + 1], rectangles[i].width);
+        }
+    }
+
+    /**
+     * Precompute the symmetries of the rectangles that are used to break the symmetries of the search:
+     * the previous rectangle with the same dimensions for each rectangle, and the first rectangle
+     * that has no such rectangle, which is kept in the bottom left quadrant of the bin.
+     *
+     * @param rectangles the rectangles, in the order in which they are placed
+     */
+    private void precomputeSymmetry(Rectangle[] rectangles) {
+        previousIdentical = new int[rectangles.length];
+        int[] identical = new int[rectangles.length];
+
+        for (int i = 0; i < rectangles.length; i++) {
+            previousIdentical[i] = -1;
+            for (int j = i - 1; j >= 0; j--) {
+                if (rectangles[i].width == rectangles[j].width && rectangles[i].height == rectangles[j].height) {
+                    previousIdentical[i] = j;
+                    identical[i]++;
+                    identical[j]++;
+                    break;
+                }
+            }
+        }
+
+        mirrored = -1;
+        for (int i = 0; i < rectangles.length && mirrored < 0; i++) {
+            if (identical[i] == 0) {
+                mirrored = i;
+            }
+        }
+    }
+
+    /**
+     * Precompute the normal positions of the rectangles in a bin of the given size. Every packing can be pushed
+     * to the left and to the bottom until each rectangle touches the bin or another rectangle on its left
+     * and below it, so only the positions whose coordinates are subset sums of the widths (and the heights)
+     * of the other rectangles have to be tried. Pushing keeps the mirrored rectangle in its quadrant.
+     *
+     * @param width the width of the enclosing bin
+     * @param height the height of the enclosing bin
+     * @param rectangles the rectangles, in the order in which they are placed
+     */
+    private void precomputeNormalPatterns(int width, int height, Rectangle[] rectangles) {
+        normalColumns = new BitSet[rectangles.length];
+        normalRows = new BitSet[rectangles.length];
+
+        int[] others = new int[rectangles.length - 1];
+        for (int i = 0; i < rectangles.length; i++) {
+            // the widths of the other rectangles
+            for (int j = 0, k = 0; j < rectangles.length; j++) {
+                if (j != i) {
+                    others[k++] = rectangles[j].width;
+                }
+            }
+            normalColumns[i] = BitSet.valueOf(LowerBounds.subsetSums(others, Math.max(0, width - rectangles[i].width)));
+
+            // the heights of the other rectangles, turned into array coordinates (which start from the top)
+            for (int j = 0, k = 0; j < rectangles.length; j++) {
+                if (j != i) {
+                    others[k++] = rectangles[j].height;
+                }
+            }
+            int maxY = height - rectangles[i].height;
+            BitSet sums = BitSet.valueOf(LowerBounds.subsetSums(others, Math.max(0, maxY)));
+            normalRows[i] = new BitSet(height);
+            for (int y = sums.nextSetBit(0); y >= 0 && y <= maxY; y = sums.nextSetBit(y + 1)) {
+                normalRows[i].set(maxY - y);
+            }
+        }
+    }
+
     /**
      * A function that finds using the histogram if a rectangle can be placed, if it can be placed the histogram
      * is updated.
@@ -537,25 +1269,14 @@ public class OptimalRectanglePacking implements Solver {
             return false;
         }
 
-        for (int i = y; i < y + rectangle.height; i++) {
-            if (placementMatrix[i][x] >= 0 || placementMatrix[i][x + rectangle.width - 1] >= 0) {
-                return false;
-            }
-        }
-
-        for (int j = x; j < x + rectangle.width; j++) {
-            if (placementMatrix[y][j] >= 0 || placementMatrix[y + rectangle.height - 1][j] >= 0) {
-                return false;
-            }
-        }
-
-        return true;
+        // check the span of the rectangle in each row, a word at a time
+        return grid.isFree(x, y, rectangle.width, rectangle.height);
     }
 
     /**
      * Place the rectangle at (x, y) in a bin of given width and height,
-     * by marking the space occupied by it with its index
-     * in the placement matrix.
+     * by marking the space occupied by it
+     * in the occupancy grid.
      *
      * @param x the x coordinate
      * @param y the y coordinate
@@ -564,11 +1285,7 @@ public class OptimalRectanglePacking implements Solver {
      * @param binHeight the height of the current enclosing bin
      */
     private void placeRectangle(int x, int y, Rectangle rectangle, int binWidth, int binHeight) {
-        for (int i = y; i < y + rectangle.height; i++) {
-            for (int j = x; j < x + rectangle.width; j++) {
-                placementMatrix[i][j] = rectangle.index;
-            }
-        }
+        grid.fill(x, y, rectangle.width, rectangle.height);
 
         // array x coordinate = euclidean x coordinate
         rectangle.x = x;
@@ -579,23 +1296,115 @@ public class OptimalRectanglePacking implements Solver {
     }
 
     /**
-     * Clear the rectangle at (x, y), by marking the space occupied by it with -1
-     * in the placement matrix.
+     * Clear the rectangle at (x, y), by marking the space occupied by it as free
+     * in the occupancy grid.
      *
      * @param x the x coordinate
      * @param y the y coordinate
      * @param rectangle the rectangle to be cleared
      */
     private void clearRectangle(int x, int y, Rectangle rectangle) {
-        for (int i = y; i < y + rectangle.height; i++) {
-            for (int j = x; j < x + rectangle.width; j++) {
-                placementMatrix[i][j] = -1;
-            }
-        }
+        grid.clear(x, y, rectangle.width, rectangle.height);
     }
 
+    /**
+     * Generate an iterative solution - i.e. test the candidate enclosing bins in the order of their area,
+     * so the first bin in which the rectangles can be placed is optimal.
+     *
+     * The candidate bins are all the bins between the lower bounds (the total area of the rectangles,
+     * the widest and the tallest rectangle, or the fixed height) and the area of the greedy placement.
+     * A bin that fits inside a bin in which the rectangles cannot be placed is not tested,
+     * and neither is a bin that is rejected by the lower bounds.
+     *
+     * @param rectangles the given array of rectangles
+     * @return an array in which rectangles are placed optimally along with the enclosing bin
+     */
     private Pair<Rectangle[], Rectangle> iterativeSolution(Rectangle[] rectangles) {
-        return null;
+        // the greedy placement is the initial solution and its area is the upper bound
+        Pair<Rectangle[], Rectangle> greedy = greedySolution(rectangles, fixedHeight);
+        Rectangle optimalBin = greedy.second;
+        Rectangle[] optimalPlacement = greedy.first;
+        long upperBound = (long) optimalBin.width * optimalBin.height;
+        improve(upperBound);
+
+        // the argument must not be modified
+        Rectangle[] arr = copyRectangles(greedy.first);
+
+        //sort on area (descending)
+        Arrays.sort( arr, new Comparator<Rectangle>() {
+            @Override
+            public int compare(Rectangle o1, Rectangle o2) {
+                return o2.height * o2.width - o1.height * o1.width;
+            }
+        });
+
+        // precompute the area and the width of the remaining rectangles for the pruning
+        precomputeRemaining(arr);
+        precomputeSymmetry(arr);
+
+        LowerBounds bounds = new LowerBounds(arr);
+
+        long totalArea = remainingArea[0];
+        int minWidth = 0;
+        int minHeight = 0;
+        for (Rectangle rectangle : arr) {
+            minWidth = Math.max(minWidth, rectangle.width);
+            minHeight = Math.max(minHeight, rectangle.height);
+        }
+        int maxHeight = (int) ((upperBound - 1) / minWidth);
+        if (fixedHeight > 0) {
+            minHeight = fixedHeight;
+            maxHeight = fixedHeight;
+        }
+
+        // enumerate the candidate bins that are smaller than the greedy one, as (area << 32 | height)
+        ArrayList<Long> candidates = new ArrayList<>();
+        for (int height = minHeight; height <= maxHeight; height++) {
+            int fromWidth = (int) Math.max(minWidth, (totalArea + height - 1) / height);
+            int toWidth = (int) ((upperBound - 1) / height);
+            for (int width = fromWidth; width <= toWidth; width++) {
+                candidates.add(((long) width * height << 32) | height);
+            }
+        }
+        Collections.sort(candidates);
+
+        // the widest bin of each height in which the rectangles are known not to fit
+        int[] infeasibleWidth = new int[Math.max(0, maxHeight - minHeight + 1)];
+
+        for (long candidate : candidates) {
+            long area = candidate >>> 32;
+            int height = (int) candidate;
+            int width = (int) (area / height);
+
+            // the candidates are sorted by area, so none of the next ones can improve either
+            if (!canImprove(area) || timeIsUp()) {
+                break;
+            }
+            if (width <= infeasibleWidth[height - minHeight]) {
+                continue;
+            }
+
+            // the lower bounds reject most bins without a search
+            if (bounds.fits(width, height)) {
+                grid = new OccupancyGrid(width, height);
+                if (containmentAlgorithm(width, height, arr, 0)) {
+                    optimalBin = new Rectangle(width, height, -1);
+                    optimalPlacement = new Rectangle[arr.length];
+                    for (Rectangle rectangle : arr) {
+                        optimalPlacement[rectangle.index] = copyRectangle(rectangle);
+                    }
+                    improve(area);
+                    break;
+                }
+            }
+
+            // the rectangles do not fit in any bin that fits inside this one either
+            for (int i = 0; i <= height - minHeight; i++) {
+                infeasibleWidth[i] = Math.max(infeasibleWidth[i], width);
+            }
+        }
+
+        return new Pair<>(optimalPlacement, optimalBin);
     }
 
     /**
@@ -639,6 +1448,88 @@ public class OptimalRectanglePacking implements Solver {
         return ret;
     }
 
+    /**
+     * Task that searches a range of rotation combinations, splitting it in halves
+     * that are searched in parallel by the fork join pool.
+     */
+    private class CombinationTask extends RecursiveTask<Pair<Rectangle[], Rectangle>> {
+        private static final long serialVersionUID = 1L;
+
+        private Rectangle[] rectangles;
+        private AtomicLong incumbent;
+        private int from;
+        private int to;
+
+        public CombinationTask(Rectangle[] rectangles, AtomicLong incumbent, int from, int to) {
+            this.rectangles = rectangles;
+            this.incumbent = incumbent;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Pair<Rectangle[], Rectangle> compute() {
+            // once the time is up, no more combinations are searched (as soon as there is any bin to return)
+            if (timeIsUp() && incumbent.get() != Long.MAX_VALUE) {
+                return null;
+            }
+            if (to - from == 1) {
+                if (!isCanonical(rectangles, from)) {
+                    return null;
+                }
+                return new OptimalRectanglePacking(solution, engine, fixedHeight, incumbent, deadline, from).solveCombination(rectangles);
+            }
+
+            int middle = (from + to) / 2;
+            CombinationTask left = new CombinationTask(rectangles, incumbent, from, middle);
+            CombinationTask right = new CombinationTask(rectangles, incumbent, middle, to);
+
+            right.fork();
+            Pair<Rectangle[], Rectangle> leftBest = left.compute();
+            Pair<Rectangle[], Rectangle> rightBest = right.join();
+
+            // the combinations in the left half come first, so they win the ties
+            if (leftBest == null) {
+                return rightBest;
+            }
+            if (rightBest == null ||
+                    (long) leftBest.second.width * leftBest.second.height <=
+                    (long) rightBest.second.width * rightBest.second.height) {
+                return leftBest;
+            }
+            return rightBest;
+        }
+    }
+
+    /**
+     * Task that searches for a packing of the remaining rectangles, given the placement of the first ones.
+     */
+    private class ContainmentTask extends RecursiveTask<Rectangle[]> {
+        private static final long serialVersionUID = 1L;
+
+        private OptimalRectanglePacking worker;
+        private int width;
+        private int height;
+        private Rectangle[] rectangles;
+        private int start;
+        private AtomicBoolean found;
+
+        public ContainmentTask(OptimalRectanglePacking worker, int width, int height, Rectangle[] rectangles,
+                               int start, AtomicBoolean found) {
+            this.worker = worker;
+            this.width = width;
+            this.height = height;
+            this.rectangles = rectangles;
+            this.start = start;
+            this.found = found;
+        }
+
+        @Override
+        protected Rectangle[] compute() {
+            return worker.search(width, height, rectangles, start, found) ? rectangles : null;
+        }
+    }
+
     private class Pair<T, U> {
         public T first;
         public U second;
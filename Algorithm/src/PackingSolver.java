@@ -6,7 +6,6 @@ import java.text.DecimalFormat;
  * TODO (maybe) add some time measurements - i.e. if one algorithm takes too long use a faster one
  */
 
-// TODO Maximal Rectangles ALGORITHM fails on 10_03_hf_ry.txt
 public class PackingSolver {
     /** CONSTANTS */
     private static final String IN_STD_FILE = "src/tests/oriented equal-perimeter_10000.in";         // standard stream input
@@ -14,6 +13,11 @@ public class PackingSolver {
     private static final String OUT_STD_FILE = "src/tests/out.out";         // standard stream output
     private static final String OUT_DEBUG_FILE = "src/tests/debug.out";     // error    stream output
 
+    private static final int LARGE_INSTANCE = 1000000;  // from this number of rectangles on, the rectangles are
+                                                        // kept outside of the heap
+    private static final int PARALLEL_INSTANCE = 100;   // from this number of rectangles on, the maximal rectangles
+                                                        // candidates are scored in parallel
+
     /** INSTANCE VARIABLES */
     private String      variant;                            // free or fixed
     private int         height;                             // height of the enclosing rectangle
@@ -61,6 +65,11 @@ public class PackingSolver {
         // read number of rectangles ("n")
         n = in.nextInt();
 
+        if (n >= LARGE_INSTANCE) {
+            solveLarge();
+            return;
+        }
+
         rectangles = new Rectangle[n];
 
         for (int i = 0; i < n; i++) {
@@ -102,16 +111,16 @@ public class PackingSolver {
 //        result = solver.solver(rectangles);
 
         if (n == 3) {
-            solver = new OptimalRectanglePacking(rotations, height);
+            solver = new OptimalRectanglePacking(rotations, height, false);
             result = solver.solver(rectangles);
         } else if (n == 5) {
-            solver = new OptimalRectanglePacking(rotations, height);
+            solver = new OptimalRectanglePacking(rotations, height, false);
             result = solver.solver(rectangles);
         } else if (n == 10) {
-            solver = new MaximalRectanglesAlgorithm(rotations, height);
+            solver = new MaximalRectanglesAllHeuristics(rotations, height);
             Rectangle[] result1 = solver.solver(rectangles);
-            int area1 = ((MaximalRectanglesAlgorithm) solver).getEnclosingRectangle().width *
-                    ((MaximalRectanglesAlgorithm) solver).getEnclosingRectangle().height;
+            int area1 = ((MaximalRectanglesAllHeuristics) solver).getEnclosingRectangle().width *
+                    ((MaximalRectanglesAllHeuristics) solver).getEnclosingRectangle().height;
 
             solver = new BinaryTreeBinPacking(rotations, height);
             Rectangle[] result2 = solver.solver(rectangles);
@@ -124,10 +133,10 @@ public class PackingSolver {
                 result = result2;
             }
         } else if (n == 25) {
-            solver = new MaximalRectanglesAlgorithm(rotations, height);
+            solver = new MaximalRectanglesAllHeuristics(rotations, height);
             Rectangle[] result1 = solver.solver(rectangles);
-            int area1 = ((MaximalRectanglesAlgorithm) solver).getEnclosingRectangle().width *
-                    ((MaximalRectanglesAlgorithm) solver).getEnclosingRectangle().height;
+            int area1 = ((MaximalRectanglesAllHeuristics) solver).getEnclosingRectangle().width *
+                    ((MaximalRectanglesAllHeuristics) solver).getEnclosingRectangle().height;
 
             solver = new BinaryTreeBinPacking(rotations, height);
             Rectangle[] result2 = solver.solver(rectangles);
@@ -139,9 +148,23 @@ public class PackingSolver {
             } else {
                 result = result2;
             }
-        } else if (n == 10000) {
+        } else {
+            // the larger steps of the maximal rectangles algorithm are scored on all the cores
+            solver = new MaximalRectanglesAlgorithm(rotations, height, n >= PARALLEL_INSTANCE);
+            Rectangle[] result1 = solver.solver(rectangles);
+            int area1 = ((MaximalRectanglesAlgorithm) solver).getEnclosingRectangle().width *
+                    ((MaximalRectanglesAlgorithm) solver).getEnclosingRectangle().height;
+
             solver = new BinaryTreePackingAllHeuristics(rotations, height);
-            result = solver.solver(rectangles);
+            Rectangle[] result2 = solver.solver(rectangles);
+            int area2 = ((BinaryTreePackingAllHeuristics) solver).getEnclosingRectangle().width *
+                    ((BinaryTreePackingAllHeuristics) solver).getEnclosingRectangle().height;
+
+            if (area1 < area2) {
+                result = result1;
+            } else {
+                result = result2;
+            }
         }
 
         assert(result != null);
@@ -184,6 +207,64 @@ public class PackingSolver {
         }
     }
 
+    /**
+     * Solver method for very large instances. The rectangles are read into a store outside of the heap
+     * and the placement is written from a separate compact store, without creating an object for each rectangle.
+     * The skyline algorithm is used for these instances, since it finds each position in logarithmic time.
+     * Its sort and its skyline live outside of the heap as well, so the heap does not grow with n: 10^7 rectangles
+     * are packed with -Xmx64m, given about 1.5 GB of direct memory with rotations (-XX:MaxDirectMemorySize,
+     * which defaults to the maximum heap size).
+     */
+    private void solveLarge() {
+        RectangleSet set = RectangleSet.allocateDirect(n);
+
+        for (int i = 0; i < n; i++) {
+            set.setDimensions(i, in.nextInt(), in.nextInt());
+        }
+
+        /** Write the Output */
+        // write the initial part (identical with the input)
+        out.print("container height: " + variant);
+        if (variant.equals("fixed")) {
+            out.print(" ");
+            out.print(height);
+        }
+        out.println();
+
+        out.println("rotations allowed: " + (rotations ? "yes" : "no"));
+
+        out.println("number of rectangles: " + n);
+
+        for (int i = 0; i < n; i++) {
+            out.println(set.getWidth(i) + " " + set.getHeight(i));
+        }
+
+        // output the placement of the rectangles
+        out.println("placement of rectangles");
+
+        /** Solve the packing problem */
+        debug.println("rotations: " + (rotations ? "allowed" : "not allowed"));
+        debug.println("height: " + (height == 0 ? "free" : "fixed"));
+
+        long startTime = System.nanoTime();
+
+        Placement placement = new SkylinePacking(rotations, height).solver(set.readOnly());
+
+        long endTime = System.nanoTime();
+
+        // print the running time
+        debug.println("running time: " +
+                new DecimalFormat("#0.00000000").format((double) (endTime - startTime) * 1e-9)
+                + " seconds");
+
+        // output the position of each rectangle
+        // if required, also output whether the rectangle is rotated
+        for (int i = 0; i < n; i++) {
+            out.println((rotations ? (placement.isRotated(i) ? "yes " : "no ") : "")
+                        + placement.getX(i) + " " + placement.getY(i));
+        }
+    }
+
     /**
      * Run the algorithm on the input received in the console.
      * Output the result in the console.
@@ -0,0 +1,143 @@
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.file.Path;
+
+/**
+ * Compact placement of the rectangles of a {@link RectangleSet}, along with the enclosing rectangle.
+ *
+ * The placement of the rectangle with index i is kept at position i of every array.
+ * Like the store of rectangles, a placement can live on the heap, outside of the heap,
+ * or in a memory-mapped file with the layout [x * n][y * n][rotation bits], with little-endian
+ * 32-bit integers and the rotation bits packed in 64-bit words.
+ * The solvers create their placement next to the store of rectangles (see {@link #forRectangles}),
+ * so mapping is for callers that want to keep the result in such a file.
+ */
+public class Placement {
+    private int n;                  // the number of rectangles
+    private IntBuffer x;            // the x-coordinate of each rectangle
+    private IntBuffer y;            // the y-coordinate of each rectangle
+    private LongBuffer rotated;     // whether each rectangle is rotated or not (one bit per rectangle)
+    private int width;              // the width of the enclosing rectangle
+    private int height;             // the height of the enclosing rectangle
+
+    /**
+     * Create a placement on the heap.
+     *
+     * @param n the number of rectangles
+     */
+    public Placement(int n) {
+        this(n, Buffers.allocateInts(n, false), Buffers.allocateInts(n, false), Buffers.allocateBits(n, false));
+    }
+
+    private Placement(int n, IntBuffer x, IntBuffer y, LongBuffer rotated) {
+        this.n = n;
+        this.x = x;
+        this.y = y;
+        this.rotated = rotated;
+    }
+
+    /**
+     * Create a placement outside of the heap.
+     *
+     * @param n the number of rectangles
+     * @return the (empty) placement
+     */
+    public static Placement allocateDirect(int n) {
+        return new Placement(n, Buffers.allocateInts(n, true), Buffers.allocateInts(n, true),
+                Buffers.allocateBits(n, true));
+    }
+
+    /**
+     * Create an empty placement for the given rectangles, which lives outside of the heap
+     * if the rectangles do.
+     *
+     * @param rectangles the given rectangles
+     * @return the (empty) placement
+     */
+    public static Placement forRectangles(RectangleSet rectangles) {
+        return rectangles.isDirect() ? allocateDirect(rectangles.size()) : new Placement(rectangles.size());
+    }
+
+    /**
+     * Map a placement to a file (which is created if it does not exist yet).
+     *
+     * @param file the path of the file
+     * @param n the number of rectangles
+     * @return the placement backed by the file
+     */
+    public static Placement map(Path file, int n) {
+        ByteBuffer[] sections = Buffers.map(file, 4L * n, 4L * n, 8L * Buffers.words(n));
+        return new Placement(n, sections[0].asIntBuffer(), sections[1].asIntBuffer(), sections[2].asLongBuffer());
+    }
+
+    /**
+     * Create the placement as an array of rectangles.
+     *
+     * @param rectangles the rectangles that were placed
+     * @return the rectangles with their (x, y) coordinates, in the order of their indices
+     */
+    public Rectangle[] toRectangles(RectangleSet rectangles) {
+        Rectangle[] placement = new Rectangle[n];
+
+        for (int i = 0; i < n; i++) {
+            placement[i] = new Rectangle(getWidth(rectangles, i), getHeight(rectangles, i), i);
+            placement[i].x = getX(i);
+            placement[i].y = getY(i);
+            placement[i].rotated = isRotated(i);
+        }
+
+        return placement;
+    }
+
+    /**
+     * Rotate the rectangle with the given index.
+     *
+     * @param i the index of the rectangle
+     */
+    public void rotate(int i) {
+        rotated.put(i >>> 6, rotated.get(i >>> 6) ^ (1L << i));
+    }
+
+    /**
+     * Get the width of a rectangle, as it is placed (i.e. taking its rotation into account).
+     *
+     * @param rectangles the rectangles that are placed
+     * @param i the index of the rectangle
+     * @return the width of the rectangle
+     */
+    public int getWidth(RectangleSet rectangles, int i) {
+        return isRotated(i) ? rectangles.getHeight(i) : rectangles.getWidth(i);
+    }
+
+    /**
+     * Get the height of a rectangle, as it is placed (i.e. taking its rotation into account).
+     *
+     * @param rectangles the rectangles that are placed
+     * @param i the index of the rectangle
+     * @return the height of the rectangle
+     */
+    public int getHeight(RectangleSet rectangles, int i) {
+        return isRotated(i) ? rectangles.getWidth(i) : rectangles.getHeight(i);
+    }
+
+    public int size() { return n; }
+
+    public int getX(int i) { return x.get(i); }
+
+    public int getY(int i) { return y.get(i); }
+
+    public boolean isRotated(int i) { return ((rotated.get(i >>> 6) >>> i) & 1L) != 0; }
+
+    public void setPosition(int i, int x, int y) {
+        this.x.put(i, x);
+        this.y.put(i, y);
+    }
+
+    public void setEnclosingRectangle(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    public Rectangle getEnclosingRectangle() { return new Rectangle(width, height, -1); }
+}
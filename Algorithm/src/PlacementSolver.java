@@ -0,0 +1,32 @@
+/**
+ * Interface for the solvers that work on a compact store of rectangles
+ * instead of an array of Rectangle objects.
+ *
+ * The rectangles are only read, never modified (no sorting, no rotating), so the same store
+ * can be shared by several solvers without copying it. The result is returned as a separate placement.
+ *
+ * The solver interface for arrays of rectangles is provided as an adapter.
+ */
+public interface PlacementSolver extends Solver {
+    /**
+     * The main solver method which should be overwritten
+     * in order to computer the result
+     *
+     * @param rectangles the provided rectangles (which must not be modified)
+     * @return the placement of the rectangles, along with the enclosing rectangle
+     */
+    Placement solver(RectangleSet rectangles);
+
+    /**
+     * Adapter that solves the problem for an array of rectangles.
+     *
+     * @param rectangles the provided rectangles
+     * @return the coordinate of each rectangles, in the order
+     *         they appeared in the provided array of rectangles
+     */
+    @Override
+    default Rectangle[] solver(Rectangle[] rectangles) {
+        RectangleSet set = RectangleSet.fromRectangles(rectangles).readOnly();
+        return solver(set).toRectangles(set);
+    }
+}
@@ -8,7 +8,6 @@ public class Rectangle {
     public int x;
     public int y;
     public boolean rotated;
-    public Node fit;
     public int maximumDimension; // max between width and height
 
     public Rectangle() {
@@ -18,7 +17,6 @@ public class Rectangle {
         this.x = 0;
         this.y = 0;
         this.rotated = false;
-        this.fit = null;
     }
 
     public Rectangle(int width, int height, int index) {
@@ -26,7 +24,6 @@ public class Rectangle {
         this.height = height;
         this.index = index;
         this.rotated = false;
-        this.fit = null;
     }
 
     public Rectangle(int x, int y) {
@@ -41,7 +38,6 @@ public class Rectangle {
         this.x = other.x;
         this.y = other.y;
         this.rotated = other.rotated;
-        this.fit = other.fit;
     }
 
     public void rotate() {
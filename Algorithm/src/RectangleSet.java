@@ -0,0 +1,174 @@
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Compact store of the input rectangles as a struct of arrays.
+ *
+ * The rectangle with index i is kept at position i of every array, so no index has to be stored.
+ * Solvers do not modify the store, they work on permutations of the indices instead
+ * and return their result as a separate {@link Placement}.
+ * This takes 8 bytes per rectangle, instead of a Rectangle object per rectangle.
+ *
+ * The arrays can live on the heap, in direct (off-heap) buffers, or in a memory-mapped file,
+ * so that very large instances do not need a big heap. A mapped file has the layout
+ * [width * n][height * n], with little-endian 32-bit integers.
+ * The text input is read into direct buffers; mapping is for callers that keep the rectangles in such a file.
+ * A store holds at most {@link Buffers#MAX_INTS} rectangles.
+ */
+public class RectangleSet {
+    /** CONSTANTS */
+    private static final int RADIX = 1 << 16;   // the number of values of a digit of the sort
+
+    private int n;                  // the number of rectangles
+    private IntBuffer width;        // the width of each rectangle
+    private IntBuffer height;       // the height of each rectangle
+
+    /**
+     * Create a store on the heap.
+     *
+     * @param n the number of rectangles
+     */
+    public RectangleSet(int n) {
+        this(n, Buffers.allocateInts(n, false), Buffers.allocateInts(n, false));
+    }
+
+    private RectangleSet(int n, IntBuffer width, IntBuffer height) {
+        this.n = n;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Create a store outside of the heap.
+     *
+     * @param n the number of rectangles
+     * @return the (empty) store
+     */
+    public static RectangleSet allocateDirect(int n) {
+        return new RectangleSet(n, Buffers.allocateInts(n, true), Buffers.allocateInts(n, true));
+    }
+
+    /**
+     * Map a store to a file (which is created if it does not exist yet).
+     *
+     * @param file the path of the file
+     * @param n the number of rectangles
+     * @return the store backed by the file
+     */
+    public static RectangleSet map(Path file, int n) {
+        ByteBuffer[] sections = Buffers.map(file, 4L * n, 4L * n);
+        return new RectangleSet(n, sections[0].asIntBuffer(), sections[1].asIntBuffer());
+    }
+
+    /**
+     * Create a store from an array of rectangles, using the index of each rectangle as its position.
+     *
+     * @param rectangles the given array of rectangles
+     * @return the store containing the rectangles
+     */
+    public static RectangleSet fromRectangles(Rectangle[] rectangles) {
+        RectangleSet set = new RectangleSet(rectangles.length);
+
+        for (Rectangle rectangle : rectangles) {
+            set.setDimensions(rectangle.index, rectangle.width, rectangle.height);
+        }
+
+        return set;
+    }
+
+    /**
+     * Create a read-only view of the store, which shares the rectangles with it without copying them.
+     *
+     * @return the read-only view
+     */
+    public RectangleSet readOnly() {
+        return new RectangleSet(n, width.asReadOnlyBuffer(), height.asReadOnlyBuffer());
+    }
+
+    /**
+     * Compute the permutation of the indices that sorts the rectangles by descending key.
+     * Rectangles with the same key keep the order of their indices.
+     *
+     * @param keys the (non-negative) key of each rectangle
+     * @return the indices of the rectangles in sorted order
+     */
+    public static int[] sortDescending(int[] keys) {
+        return sortDescending(IntBuffer.wrap(keys)).array();
+    }
+
+    /**
+     * Compute the permutation of the indices that sorts the rectangles by descending key, in a buffer that lives
+     * where the keys live. Rectangles with the same key keep the order of their indices.
+     *
+     * @param keys the (non-negative) key of each rectangle
+     * @return the indices of the rectangles in sorted order
+     */
+    public static IntBuffer sortDescending(IntBuffer keys) {
+        IntBuffer order = Buffers.allocateInts(keys.capacity(), keys.isDirect());
+        for (int i = 0; i < keys.capacity(); i++) {
+            order.put(i, i);
+        }
+
+        sortDescending(keys, order);
+
+        return order;
+    }
+
+    /**
+     * Sort a permutation of the indices by descending key, keeping the order of the indices with the same key,
+     * so that the sorts by several keys can be chained (from the least important one to the most important one).
+     * This is a radix sort on two 16-bit digits of the inverted keys, so no objects or pairs of
+     * a key and an index are needed: it takes another buffer of n integers, which lives where the permutation lives.
+     *
+     * @param keys the (non-negative) key of each rectangle
+     * @param order the permutation, which is sorted in place
+     */
+    public static void sortDescending(IntBuffer keys, IntBuffer order) {
+        int n = order.capacity();
+        IntBuffer scratch = Buffers.allocateInts(n, order.isDirect());
+        int[] start = new int[RADIX + 1];   // the first position of each digit
+
+        // the second pass moves the indices back from the scratch buffer
+        IntBuffer from = order;
+        IntBuffer to = scratch;
+        for (int shift = 0; shift < 32; shift += 16) {
+            Arrays.fill(start, 0);
+            for (int k = 0; k < n; k++) {
+                start[digit(keys.get(from.get(k)), shift) + 1]++;
+            }
+            for (int d = 0; d < RADIX; d++) {
+                start[d + 1] += start[d];
+            }
+            for (int k = 0; k < n; k++) {
+                int i = from.get(k);
+                to.put(start[digit(keys.get(i), shift)]++, i);
+            }
+
+            IntBuffer swap = from;
+            from = to;
+            to = swap;
+        }
+    }
+
+    /**
+     * Get a digit of an inverted key, so that the larger keys come first.
+     */
+    private static int digit(int key, int shift) {
+        return ((Integer.MAX_VALUE - key) >>> shift) & (RADIX - 1);
+    }
+
+    public int size() { return n; }
+
+    public boolean isDirect() { return width.isDirect(); }
+
+    public int getWidth(int i) { return width.get(i); }
+
+    public int getHeight(int i) { return height.get(i); }
+
+    public void setDimensions(int i, int width, int height) {
+        this.width.put(i, width);
+        this.height.put(i, height);
+    }
+}
@@ -0,0 +1,226 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Shelf packing (next fit, first fit and best fit decreasing height, Coffman et al.)
+ *
+ * The rectangles are sorted by decreasing height and put side by side on shelves. The first rectangle on a shelf
+ * sets its height, so every later rectangle on it is at most as tall. A new shelf is opened on top of the last one
+ * when the rectangle does not fit on the shelves that are considered:
+ * <ul>
+ *     <li>next fit: only the last shelf</li>
+ *     <li>first fit: the lowest shelf with enough width left</li>
+ *     <li>best fit: the shelf with the least width left that is still enough</li>
+ * </ul>
+ *
+ * If the height is free, the shelves are about as wide as the square root of the total area.
+ * If the height is fixed, the packing is transposed: the shelves are columns of the fixed height,
+ * which are opened to the right of each other.
+ * If rotations are allowed, each rectangle is turned so that it is as low as possible on its shelf.
+ *
+ * After the sort, next fit takes constant time per rectangle, first fit finds its shelf in a segment tree
+ * of the width left on each shelf, and best fit finds its shelf in an ordered map keyed on the width left.
+ */
+public class ShelfPacking implements PlacementSolver {
+
+    private boolean rotations;          // if rotations are allowed
+    private int fixedHeight;            // the fixed height; 0 if the height is free
+    private ShelfHeuristic heuristic;   // the choice of the shelf
+    private int enclosingWidth;         // the width of the enclosing rectangle
+    private int enclosingHeight;        // the height of the enclosing rectangle
+
+    // the shelves, in strip coordinates (across the strip and along it)
+    private int stripWidth;             // the width of the shelves (the fixed height, if there is one)
+    private int[] shelfLevel;           // the level (along the strip) of each shelf
+    private int[] shelfLeft;            // the width that is left on each shelf
+    private int shelves;                // the number of shelves
+    private int[] mostLeft;             // the segment tree for first fit: the most width left in each range of shelves
+    private int leaves;                 // the number of leaves of the segment tree
+    private TreeMap<Integer, ArrayDeque<Integer>> byWidthLeft;  // the shelves for best fit, by the width left
+
+    public enum ShelfHeuristic {
+        NEXT_FIT,   // only the last shelf is considered
+        FIRST_FIT,  // the lowest shelf that the rectangle fits on
+        BEST_FIT,   // the shelf with the least width left that the rectangle fits on
+    }
+
+    @Override
+    public Placement solver(RectangleSet rectangles) {
+        int n = rectangles.size();
+        Placement placement = Placement.forRectangles(rectangles);
+
+        // choose the orientation of each rectangle and the width of the strip
+        int[] across = new int[n];
+        int[] along = new int[n];
+        long totalArea = 0;
+        int widest = 0;
+        for (int i = 0; i < n; i++) {
+            int width = rectangles.getWidth(i);
+            int height = rectangles.getHeight(i);
+            totalArea += (long) width * height;
+
+            // across the strip is the width if the height is free, and the height otherwise
+            across[i] = (fixedHeight > 0) ? height : width;
+            along[i] = (fixedHeight > 0) ? width : height;
+            // a rectangle is turned to be as low as possible, unless it then no longer fits across a fixed height
+            boolean lower = along[i] > across[i] && (fixedHeight == 0 || along[i] <= fixedHeight);
+            if (rotations && (lower || (fixedHeight > 0 && across[i] > fixedHeight))) {
+                int temp = across[i];
+                across[i] = along[i];
+                along[i] = temp;
+                placement.rotate(i);
+            }
+            widest = Math.max(widest, across[i]);
+        }
+
+        if (fixedHeight > 0) {
+            stripWidth = fixedHeight;
+        }
+        else {
+            stripWidth = Math.max(widest, (int) Math.ceil(Math.sqrt((double) totalArea)));
+        }
+
+        initShelves(n);
+        enclosingWidth = 0;
+        enclosingHeight = 0;
+        int top = 0;    // the level above the last shelf
+
+        for (int i : RectangleSet.sortDescending(along)) {
+            int shelf = findShelf(across[i]);
+            if (shelf < 0) {
+                // open a new shelf on top of the last one, as high as the rectangle
+                shelf = shelves++;
+                shelfLevel[shelf] = top;
+                shelfLeft[shelf] = stripWidth;
+                top += along[i];
+            }
+            else {
+                removeShelf(shelf);
+            }
+
+            int position = stripWidth - shelfLeft[shelf];
+            shelfLeft[shelf] -= across[i];
+            addShelf(shelf);
+
+            // map the strip coordinates back to the bin
+            if (fixedHeight > 0) {
+                placement.setPosition(i, shelfLevel[shelf], position);
+            }
+            else {
+                placement.setPosition(i, position, shelfLevel[shelf]);
+                enclosingWidth = Math.max(enclosingWidth, position + across[i]);
+            }
+        }
+
+        if (fixedHeight > 0) {
+            enclosingWidth = top;
+            enclosingHeight = fixedHeight;
+        }
+        else {
+            enclosingHeight = top;
+        }
+        placement.setEnclosingRectangle(enclosingWidth, enclosingHeight);
+
+        return placement;
+    }
+
+    /**
+     * Constructor (best fit)
+     */
+    public ShelfPacking(boolean rotations, int fixedHeight) {
+        this(rotations, fixedHeight, ShelfHeuristic.BEST_FIT);
+    }
+
+    /**
+     * Constructor with shelf heuristic
+     */
+    public ShelfPacking(boolean rotations, int fixedHeight, ShelfHeuristic heuristic) {
+        this.rotations = rotations;
+        this.fixedHeight = fixedHeight;
+        this.heuristic = heuristic;
+    }
+
+    /**
+     * Create the (empty) structures that keep track of the shelves.
+     *
+     * @param n the number of rectangles (each rectangle opens at most one shelf)
+     */
+    private void initShelves(int n) {
+        shelfLevel = new int[n];
+        shelfLeft = new int[n];
+        shelves = 0;
+
+        if (heuristic == ShelfHeuristic.FIRST_FIT) {
+            leaves = 1;
+            while (leaves < n) {
+                leaves <<= 1;
+            }
+            mostLeft = new int[2 * leaves];
+            Arrays.fill(mostLeft, -1);
+        }
+        else if (heuristic == ShelfHeuristic.BEST_FIT) {
+            byWidthLeft = new TreeMap<>();
+        }
+    }
+
+    /**
+     * Find the shelf that a rectangle is put on, according to the heuristic.
+     *
+     * @param width the size of the rectangle across the strip
+     * @return the shelf; -1 if a new shelf has to be opened
+     */
+    private int findShelf(int width) {
+        switch (heuristic) {
+            case NEXT_FIT:
+                return (shelves > 0 && shelfLeft[shelves - 1] >= width) ? shelves - 1 : -1;
+            case FIRST_FIT:
+                if (mostLeft[1] < width) {
+                    return -1;
+                }
+                // descend to the leftmost leaf with enough width left
+                int node = 1;
+                while (node < leaves) {
+                    node = (mostLeft[2 * node] >= width) ? 2 * node : 2 * node + 1;
+                }
+                return node - leaves;
+            case BEST_FIT:
+                Map.Entry<Integer, ArrayDeque<Integer>> entry = byWidthLeft.ceilingEntry(width);
+                return (entry == null) ? -1 : entry.getValue().peekFirst();
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Take a shelf out of the structure of the heuristic, before the width left on it changes.
+     */
+    private void removeShelf(int shelf) {
+        if (heuristic == ShelfHeuristic.BEST_FIT) {
+            ArrayDeque<Integer> same = byWidthLeft.get(shelfLeft[shelf]);
+            same.remove(shelf);
+            if (same.isEmpty()) {
+                byWidthLeft.remove(shelfLeft[shelf]);
+            }
+        }
+    }
+
+    /**
+     * Put a shelf (back) in the structure of the heuristic, after the width left on it changed.
+     */
+    private void addShelf(int shelf) {
+        if (heuristic == ShelfHeuristic.FIRST_FIT) {
+            int node = leaves + shelf;
+            mostLeft[node] = shelfLeft[shelf];
+            for (node >>>= 1; node > 0; node >>>= 1) {
+                mostLeft[node] = Math.max(mostLeft[2 * node], mostLeft[2 * node + 1]);
+            }
+        }
+        else if (heuristic == ShelfHeuristic.BEST_FIT && shelfLeft[shelf] > 0) {
+            byWidthLeft.computeIfAbsent(shelfLeft[shelf], left -> new ArrayDeque<>()).addLast(shelf);
+        }
+    }
+
+    public Rectangle getEnclosingRectangle() { return new Rectangle(enclosingWidth, enclosingHeight, -1); }
+}
@@ -0,0 +1,517 @@
+import java.nio.IntBuffer;
+
+/**
+ * Skyline packing (best fit variant of bottom-left, Burke, Kendall and Whitwell).
+ *
+ * The rectangles are packed in a strip: the fixed height if there is one (the strip then grows to the right),
+ * or a width of about the square root of the total area if the height is free (the strip then grows upwards,
+ * so that the enclosing rectangle is square-ish). The top of the packing is kept as a skyline: a list of
+ * horizontal segments, where adjacent segments always have different heights.
+ *
+ * At every step the lowest segment (the leftmost one in case of ties) is filled with the best rectangle that fits
+ * in it: the widest orientation if rotations are allowed, and the tallest rectangle otherwise. The rectangle is
+ * placed next to the taller of the neighbouring segments. If no rectangle fits, the segment is wasted:
+ * it is raised to the lower of its neighbours and merged with it.
+ *
+ * Both choices take logarithmic time, so that very large instances can be packed:
+ * <ul>
+ *     <li>the segments are kept in a segment tree over their slots, which holds the lowest segment of each range</li>
+ *     <li>the orientations of the rectangles are sorted by descending width, so the ones that fit in a segment
+ *     are a suffix of the sorted orientations, and a segment tree over them holds the best one of each range
+ *     that is not placed yet</li>
+ * </ul>
+ *
+ * The orientations, the segments and both segment trees are kept in buffers that live where the rectangles live,
+ * so packing a store outside of the heap takes no arrays of n integers on the heap. Outside of it, this takes
+ * at most about 100 bytes per rectangle with rotations (70 without), and another 32 bytes per rectangle (16 without)
+ * while the orientations are sorted.
+ */
+public class SkylinePacking implements PlacementSolver {
+
+    private boolean rotations;          // if rotations are allowed
+    private int fixedHeight;            // the fixed height; 0 if the height is free
+    private int stripWidth;             // the width of the strip (the fixed height, if there is one)
+    private int enclosingWidth;         // the width of the enclosing rectangle
+    private int enclosingHeight;        // the height of the enclosing rectangle
+
+    private int n;                      // the number of rectangles
+    private boolean direct;             // whether the buffers live outside of the heap (like the rectangles)
+
+    // the orientations of the rectangles, in strip coordinates (across the strip and along it)
+    private int orientations;           // the number of orientations
+    private IntBuffer across;           // the size across the strip of each orientation, in descending order
+    private IntBuffer along;            // the size along the strip of each orientation
+    private IntBuffer rectangle;        // the rectangle of each orientation, plus n if it is the rotated rectangle
+    private IntBuffer other;            // the other orientation of the same rectangle; -1 if there is none
+    private IntBuffer bestLeft;         // the segment tree: the best orientation that is left in each range; -1 if none
+    private int leavesLeft;             // the number of leaves of the segment tree of the orientations
+
+    // the segments of the skyline, as a doubly linked list in the order of the strip
+    private IntBuffer segmentStart;     // the start of each segment across the strip
+    private IntBuffer segmentWidth;     // the width of each segment
+    private IntBuffer segmentLevel;     // the level (along the strip) of each segment
+    private IntBuffer previous;         // the previous segment; -1 for the first one
+    private IntBuffer next;             // the next segment; -1 for the last one
+    private int segments;               // the number of slots in use
+    private IntBuffer lowest;           // the segment tree: the lowest segment of each range of slots; -1 if none
+    private int leaves;                 // the number of leaves of the segment tree
+
+    @Override
+    public Placement solver(RectangleSet rectangles) {
+        n = rectangles.size();
+        direct = rectangles.isDirect();
+        Placement placement = Placement.forRectangles(rectangles);
+        initOrientations(rectangles);
+        initSkyline(n);
+
+        for (int placed = 0; placed < n; ) {
+            int segment = lowest.get(1);
+            int e = findOrientation(segmentWidth.get(segment));
+
+            if (e == orientations) {
+                // no rectangle fits, so the segment is wasted
+                raise(segment);
+                continue;
+            }
+
+            int i = rectangle.get(e);
+            remove(e);
+            if (other.get(e) >= 0) {
+                remove(other.get(e));
+            }
+            if (i >= n) {
+                i -= n;
+                placement.rotate(i);
+            }
+            place(placement, i, segment, across.get(e), along.get(e));
+            placed++;
+        }
+
+        finish(placement);
+
+        return placement;
+    }
+
+    /**
+     * Pack the rectangles in the given order, each in its orientation in the store (no rotations are chosen),
+     * which makes the packer a decoder of insertion sequences for local search.
+     * Each rectangle is placed in the lowest segment that is wide enough for it, and the lower segments
+     * that are too narrow are wasted.
+     *
+     * @param rectangles the provided rectangles (which must not be modified)
+     * @param order the order in which the rectangles are placed
+     * @param width the width of the strip if the height is free (widened to the widest rectangle if needed);
+     *              ignored if the height is fixed
+     * @return the placement of the rectangles, along with the enclosing rectangle
+     */
+    public Placement solver(RectangleSet rectangles, int[] order, int width) {
+        n = rectangles.size();
+        direct = rectangles.isDirect();
+        Placement placement = Placement.forRectangles(rectangles);
+
+        stripWidth = width;
+        for (int i = 0; i < n; i++) {
+            stripWidth = Math.max(stripWidth, rectangles.getWidth(i));
+        }
+        if (fixedHeight > 0) {
+            stripWidth = fixedHeight;
+        }
+        initSkyline(n);
+
+        for (int i : order) {
+            // across the strip is the width if the height is free, and the height otherwise
+            int a = (fixedHeight > 0) ? rectangles.getHeight(i) : rectangles.getWidth(i);
+            int b = (fixedHeight > 0) ? rectangles.getWidth(i) : rectangles.getHeight(i);
+
+            int segment = lowest.get(1);
+            while (segmentWidth.get(segment) < a) {
+                raise(segment);
+                segment = lowest.get(1);
+            }
+            place(placement, i, segment, a, b);
+        }
+
+        finish(placement);
+
+        return placement;
+    }
+
+    /**
+     * Place a rectangle in a segment and record its position in the bin.
+     *
+     * @param placement the placement
+     * @param i the rectangle
+     * @param segment the segment
+     * @param width the size of the rectangle across the strip
+     * @param length the size of the rectangle along the strip
+     */
+    private void place(Placement placement, int i, int segment, int width, int length) {
+        int level = segmentLevel.get(segment);
+        int position = fill(segment, width, length);
+
+        // map the strip coordinates back to the bin
+        if (fixedHeight > 0) {
+            placement.setPosition(i, level, position);
+            enclosingWidth = Math.max(enclosingWidth, level + length);
+        }
+        else {
+            placement.setPosition(i, position, level);
+            enclosingWidth = Math.max(enclosingWidth, position + width);
+            enclosingHeight = Math.max(enclosingHeight, level + length);
+        }
+    }
+
+    /**
+     * Record the enclosing rectangle in the placement.
+     */
+    private void finish(Placement placement) {
+        if (fixedHeight > 0) {
+            enclosingHeight = fixedHeight;
+        }
+        placement.setEnclosingRectangle(enclosingWidth, enclosingHeight);
+    }
+
+    /**
+     * Get the width of the strip of the last packing (the fixed height, if there is one).
+     */
+    public int getStripWidth() {
+        return stripWidth;
+    }
+
+    /**
+     * Constructor
+     */
+    public SkylinePacking(boolean rotations, int fixedHeight) {
+        this.rotations = rotations;
+        this.fixedHeight = fixedHeight;
+    }
+
+    /**
+     * Create the orientations of the rectangles, sorted by descending size across the strip
+     * (and by descending size along the strip in case of ties), and choose the width of the strip.
+     *
+     * @param rectangles the store of rectangles
+     */
+    private void initOrientations(RectangleSet rectangles) {
+        orientations = rotations ? 2 * n : n;
+        IntBuffer acrossKeys = Buffers.allocateInts(orientations, direct);
+        IntBuffer alongKeys = Buffers.allocateInts(orientations, direct);
+
+        long totalArea = 0;
+        int minimumWidth = 0;   // the strip has to be wide enough for every rectangle
+        for (int i = 0; i < n; i++) {
+            int width = rectangles.getWidth(i);
+            int height = rectangles.getHeight(i);
+            totalArea += (long) width * height;
+
+            // across the strip is the width if the height is free, and the height otherwise
+            int a = (fixedHeight > 0) ? height : width;
+            int b = (fixedHeight > 0) ? width : height;
+            acrossKeys.put(i, a);
+            alongKeys.put(i, b);
+            if (rotations) {
+                acrossKeys.put(n + i, b);
+                alongKeys.put(n + i, a);
+            }
+            minimumWidth = Math.max(minimumWidth, rotations ? Math.min(a, b) : a);
+        }
+
+        if (fixedHeight > 0) {
+            stripWidth = fixedHeight;
+        }
+        else {
+            stripWidth = Math.max(minimumWidth, (int) Math.ceil(Math.sqrt((double) totalArea)));
+        }
+
+        // the sort is stable, so sort along the strip first and then across it
+        IntBuffer order = RectangleSet.sortDescending(alongKeys);
+        RectangleSet.sortDescending(acrossKeys, order);
+
+        across = Buffers.allocateInts(orientations, direct);
+        along = Buffers.allocateInts(orientations, direct);
+        rectangle = Buffers.allocateInts(orientations, direct);
+        other = Buffers.allocateInts(orientations, direct);
+        IntBuffer position = alongKeys;     // the sorted position of each orientation, once the keys are copied
+        for (int k = 0; k < orientations; k++) {
+            int e = order.get(k);
+            across.put(k, acrossKeys.get(e));
+            along.put(k, alongKeys.get(e));
+            rectangle.put(k, e);
+        }
+        for (int k = 0; k < orientations; k++) {
+            position.put(order.get(k), k);
+        }
+
+        for (int k = 0; k < orientations; k++) {
+            int e = order.get(k);
+            other.put(k, !rotations ? -1 : (e < n) ? position.get(e + n) : position.get(e - n));
+        }
+
+        // the segment tree of the orientations that are left, with the best one of each range
+        leavesLeft = 1;
+        while (leavesLeft < orientations) {
+            leavesLeft <<= 1;
+        }
+        bestLeft = Buffers.allocateInts(2 * leavesLeft, direct);
+        for (int node = 0; node < 2 * leavesLeft; node++) {
+            bestLeft.put(node, (node >= leavesLeft && node - leavesLeft < orientations) ? node - leavesLeft : -1);
+        }
+        for (int node = leavesLeft - 1; node > 0; node--) {
+            bestLeft.put(node, better(bestLeft.get(2 * node), bestLeft.get(2 * node + 1)));
+        }
+    }
+
+    /**
+     * Find the orientation that fills a segment of the given width, among the orientations that fit in it
+     * and whose rectangle is not placed yet.
+     *
+     * @param width the width of the segment
+     * @return the orientation; the number of orientations if there is none
+     */
+    private int findOrientation(int width) {
+        // the first orientation that is not wider than the segment
+        int low = 0;
+        int high = orientations;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (across.get(middle) > width) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+
+        // the best orientation that is left from there on, combined from the nodes that cover the range
+        int e = -1;
+        for (int from = leavesLeft + low, to = 2 * leavesLeft; from < to; from >>>= 1, to >>>= 1) {
+            if ((from & 1) != 0) {
+                e = better(e, bestLeft.get(from++));
+            }
+            if ((to & 1) != 0) {
+                e = better(e, bestLeft.get(--to));
+            }
+        }
+
+        return (e < 0) ? orientations : e;
+    }
+
+    /**
+     * The better of two orientations (either may be -1 if there is none). With rotations, this is the widest one,
+     * which lies flat if its rectangle fits in both orientations. Without rotations, it is the tallest one
+     * (the widest one in case of ties), so that the tall and narrow rectangles do not stick out at the end.
+     */
+    private int better(int a, int b) {
+        if (a < 0 || b < 0) {
+            return Math.max(a, b);
+        }
+        if (!rotations && along.get(a) != along.get(b)) {
+            return (along.get(a) > along.get(b)) ? a : b;
+        }
+        return Math.min(a, b);
+    }
+
+    /**
+     * Mark an orientation as used, by removing it from the segment tree.
+     */
+    private void remove(int e) {
+        int node = leavesLeft + e;
+        bestLeft.put(node, -1);
+        for (node >>>= 1; node > 0; node >>>= 1) {
+            bestLeft.put(node, better(bestLeft.get(2 * node), bestLeft.get(2 * node + 1)));
+        }
+    }
+
+    /**
+     * Create a skyline with a single segment at level 0 that spans the whole strip.
+     *
+     * @param n the number of rectangles (each placement adds at most one segment)
+     */
+    private void initSkyline(int n) {
+        int capacity = n + 1;
+        segmentStart = Buffers.allocateInts(capacity, direct);
+        segmentWidth = Buffers.allocateInts(capacity, direct);
+        segmentLevel = Buffers.allocateInts(capacity, direct);
+        previous = Buffers.allocateInts(capacity, direct);
+        next = Buffers.allocateInts(capacity, direct);
+
+        leaves = 1;
+        while (leaves < capacity) {
+            leaves <<= 1;
+        }
+        lowest = Buffers.allocateInts(2 * leaves, direct);
+        for (int node = 0; node < 2 * leaves; node++) {
+            lowest.put(node, -1);
+        }
+
+        segments = 0;
+        enclosingWidth = 0;
+        enclosingHeight = 0;
+        int first = newSegment(0, stripWidth, 0);
+        previous.put(first, -1);
+        next.put(first, -1);
+        update(first);
+    }
+
+    /**
+     * Take a new slot for a segment.
+     */
+    private int newSegment(int start, int width, int level) {
+        int segment = segments++;
+        segmentStart.put(segment, start);
+        segmentWidth.put(segment, width);
+        segmentLevel.put(segment, level);
+        return segment;
+    }
+
+    /**
+     * Place a rectangle in a segment, next to the taller of the neighbouring segments,
+     * and update the skyline.
+     *
+     * @param segment the segment
+     * @param width the size of the rectangle across the strip
+     * @param length the size of the rectangle along the strip
+     * @return the position of the rectangle across the strip
+     */
+    private int fill(int segment, int width, int length) {
+        int level = segmentLevel.get(segment) + length;
+
+        if (width < segmentWidth.get(segment)) {
+            // split the segment into the part that is covered and the part that is left
+            int left = previous.get(segment);
+            int right = next.get(segment);
+            boolean atRight = right >= 0 && (left < 0 || segmentLevel.get(right) > segmentLevel.get(left));
+
+            if (atRight) {
+                int covered = newSegment(segmentStart.get(segment) + segmentWidth.get(segment) - width, width, level);
+                segmentWidth.put(segment, segmentWidth.get(segment) - width);
+                link(covered, segment, right);
+                update(segment);
+                update(covered);
+                int start = segmentStart.get(covered);
+                merge(covered);
+                return start;
+            }
+            else {
+                int rest = newSegment(segmentStart.get(segment) + width, segmentWidth.get(segment) - width,
+                        segmentLevel.get(segment));
+                segmentWidth.put(segment, width);
+                segmentLevel.put(segment, level);
+                link(rest, segment, right);
+                update(segment);
+                update(rest);
+                int start = segmentStart.get(segment);
+                merge(segment);
+                return start;
+            }
+        }
+
+        int start = segmentStart.get(segment);
+        segmentLevel.put(segment, level);
+        update(segment);
+        merge(segment);
+        return start;
+    }
+
+    /**
+     * Raise a segment that no rectangle fits in to the level of the lower of its neighbours.
+     */
+    private void raise(int segment) {
+        int left = previous.get(segment);
+        int right = next.get(segment);
+        if (left < 0 && right < 0) {
+            throw new RuntimeException("a rectangle does not fit in the strip");
+        }
+
+        int level = Integer.MAX_VALUE;
+        if (left >= 0) {
+            level = segmentLevel.get(left);
+        }
+        if (right >= 0) {
+            level = Math.min(level, segmentLevel.get(right));
+        }
+
+        segmentLevel.put(segment, level);
+        update(segment);
+        merge(segment);
+    }
+
+    /**
+     * Insert a segment between two (possibly absent) segments.
+     */
+    private void link(int segment, int left, int right) {
+        previous.put(segment, left);
+        next.put(segment, right);
+        next.put(left, segment);
+        if (right >= 0) {
+            previous.put(right, segment);
+        }
+    }
+
+    /**
+     * Merge a segment with its neighbours if they are at the same level.
+     */
+    private void merge(int segment) {
+        int right = next.get(segment);
+        if (right >= 0 && segmentLevel.get(right) == segmentLevel.get(segment)) {
+            segmentWidth.put(segment, segmentWidth.get(segment) + segmentWidth.get(right));
+            unlink(right);
+        }
+
+        int left = previous.get(segment);
+        if (left >= 0 && segmentLevel.get(left) == segmentLevel.get(segment)) {
+            segmentWidth.put(left, segmentWidth.get(left) + segmentWidth.get(segment));
+            unlink(segment);
+        }
+    }
+
+    /**
+     * Remove a segment from the skyline.
+     */
+    private void unlink(int segment) {
+        int left = previous.get(segment);
+        int right = next.get(segment);
+        if (left >= 0) {
+            next.put(left, right);
+        }
+        if (right >= 0) {
+            previous.put(right, left);
+        }
+
+        // a removed segment is never the lowest one
+        int node = leaves + segment;
+        lowest.put(node, -1);
+        for (node >>>= 1; node > 0; node >>>= 1) {
+            lowest.put(node, lower(lowest.get(2 * node), lowest.get(2 * node + 1)));
+        }
+    }
+
+    /**
+     * Update the segment tree after the level or the width of a segment changed.
+     */
+    private void update(int segment) {
+        int node = leaves + segment;
+        lowest.put(node, segment);
+        for (node >>>= 1; node > 0; node >>>= 1) {
+            lowest.put(node, lower(lowest.get(2 * node), lowest.get(2 * node + 1)));
+        }
+    }
+
+    /**
+     * The lower of two segments, or the leftmost one if they are at the same level.
+     */
+    private int lower(int a, int b) {
+        if (a < 0) {
+            return b;
+        }
+        if (b < 0) {
+            return a;
+        }
+        if (segmentLevel.get(a) != segmentLevel.get(b)) {
+            return (segmentLevel.get(a) < segmentLevel.get(b)) ? a : b;
+        }
+        return (segmentStart.get(a) < segmentStart.get(b)) ? a : b;
+    }
+
+    public Rectangle getEnclosingRectangle() { return new Rectangle(enclosingWidth, enclosingHeight, -1); }
+}
@@ -0,0 +1,94 @@
+/**
+ * Bounded table of the states of the exact search that are known to have no solution,
+ * so that a state that is reached again (in another order of the placements) is cut off immediately.
+ *
+ * The states are kept by their 64-bit key only. The table is set associative: a key can only be kept
+ * in the few slots of its bucket, and when the bucket is full, a key is evicted with the clock algorithm
+ * (the keys that were found since the hand last passed them get a second chance).
+ */
+public class TranspositionTable {
+    private final static int WAYS = 4;  // the number of slots in each bucket
+
+    private long[] keys;                // the key in each slot; 0 if the slot is empty
+    private boolean[] referenced;       // whether the key in each slot was found since the hand passed it
+    private byte[] hands;               // the clock hand of each bucket
+    private int mask;                   // the mask that selects the bucket of a key
+
+    /**
+     * Create an empty table.
+     *
+     * @param capacity the number of keys that can be kept (rounded up to a power of two)
+     */
+    public TranspositionTable(int capacity) {
+        int buckets = Integer.highestOneBit(Math.max(1, (capacity + WAYS - 1) / WAYS - 1)) << 1;
+        this.keys = new long[buckets * WAYS];
+        this.referenced = new boolean[buckets * WAYS];
+        this.hands = new byte[buckets];
+        this.mask = buckets - 1;
+    }
+
+    /**
+     * Check if a state is in the table.
+     *
+     * @param key the key of the state
+     * @return true if the state is in the table; false otherwise
+     */
+    public boolean contains(long key) {
+        key = nonZero(key);
+        int first = bucket(key) * WAYS;
+
+        for (int i = first; i < first + WAYS; i++) {
+            if (keys[i] == key) {
+                referenced[i] = true;
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Add a state to the table, evicting another state if its bucket is full.
+     *
+     * @param key the key of the state
+     */
+    public void add(long key) {
+        key = nonZero(key);
+        int bucket = bucket(key);
+        int first = bucket * WAYS;
+
+        for (int i = first; i < first + WAYS; i++) {
+            if (keys[i] == key) {
+                return;
+            }
+            if (keys[i] == 0) {
+                keys[i] = key;
+                return;
+            }
+        }
+
+        // the bucket is full: move the hand past the referenced keys (clearing them) to the key to be evicted
+        int hand = hands[bucket];
+        while (referenced[first + hand]) {
+            referenced[first + hand] = false;
+            hand = (hand + 1) % WAYS;
+        }
+
+        keys[first + hand] = key;
+        hands[bucket] = (byte) ((hand + 1) % WAYS);
+    }
+
+    /**
+     * Get the bucket of a key.
+     */
+    private int bucket(long key) {
+        return (int) (key >>> 32) & mask;
+    }
+
+    /**
+     * The key 0 marks an empty slot, so it is replaced by another key.
+     */
+    private long nonZero(long key) {
+        return (key == 0) ? 1 : key;
+    }
+}